@@ -8,43 +8,148 @@
 
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 
 public class BP {
 
+    static final int TEST_BLOCK_SIZE = 256;  // patterns per testing task
+    // The classes, and the size, allowed in saved training state ...
+    static final ObjectInputFilter STATE_FILTER
+	= ObjectInputFilter.Config.createFilter
+	("java.util.Random;maxdepth=2;maxrefs=16;maxarray=0;maxbytes=4096;!*");
+
+    // TestBlock -- The outputs and errors computed for a contiguous run
+    // of testing patterns.
+    static class TestBlock {
+	int first;
+	int count;
+	double[] outputs;
+	double[] sse;
+
+	TestBlock(int first, int count, int outputN) {
+	    this.first = first;
+	    this.count = count;
+	    this.outputs = new double[count * outputN];
+	    this.sse = new double[count];
+	}
+    }
+
     public Network net;           // the neural network
-    public PatternSet trainPats;  // the training set of patterns
-    public PatternSet testPats;   // the testing set of patterns
+    public PatternSet trainPats;  // the training set of patterns (shared)
+    public PatternSet testPats;   // the testing set of patterns (shared)
+    public PatternSet replayPats; // earlier patterns to mix in (shared)
+    double replayFraction;        // portion of replayPats used each epoch
+    PatternSet replayBlock;       // the replayed patterns for one epoch
+    PatternPrefetcher trainLoader;  // streamed training patterns, if any
     Layer inputLayer;             // the network input layer
     Layer outputLayer;            // the network output layer
     double lrate;                 // the network learning rate
     double initialWtRange;        // range of initial weight values
     int epochs;                   // current number of training epochs
+    Random generator;             // source of random initial weights
+    int testThreads;              // threads used for testing
+    TrainingMetrics metrics;      // where training time is spent
 
     // Default constructor ...
     public BP() {
 	this.net = new Network();
 	this.trainPats = null;
 	this.testPats = null;
+	this.replayPats = null;
+	this.replayFraction = 0.0;
+	this.replayBlock = null;
+	this.trainLoader = null;
 	this.inputLayer = null;
 	this.outputLayer = null;
 	this.lrate = 0.1;
 	this.initialWtRange = 1.0;
 	this.epochs = 0;
+	this.generator = new Random();
+	this.testThreads = 1;
+	this.metrics = new TrainingMetrics();
     }
 
     // readTrainingPatterns -- Read training patterns from the specified
-    // file.  Return false on error.
+    // file, by way of the pattern cache, so that a file that has already
+    // been read is not read again.  Return false on error.
     public boolean readTrainingPatterns(String filename) {
-	this.trainPats = new PatternSet();
-	return (this.trainPats.readPatterns(filename));
+	if (this.trainLoader != null) {
+	    this.trainLoader.close();
+	    this.trainLoader = null;
+	}
+	this.trainPats = loadPatterns(filename, "training");
+	return (this.trainPats != null);
     }
 
-    // readTestingPatterns -- Read testing patterns from the specified file.
-    // Return false on error.
+    // streamTrainingPatterns -- Arrange for training patterns to be read
+    // from the specified file a block of at most the given number of
+    // patterns at a time during each training epoch, rather than holding
+    // the whole training set in memory.  Blocks are read ahead on a
+    // separate loader thread, with two block buffers, so that reading
+    // overlaps with training.  Return false on error.
+    public boolean streamTrainingPatterns(String filename, int blockSize) {
+	if (blockSize < 1)
+	    return (false);
+	PatternStream stream = new PatternStream();
+	if (!(stream.open(filename)))
+	    return (false);
+	stream.close();
+	if (this.trainLoader != null)
+	    this.trainLoader.close();
+	this.trainPats = null;
+	this.trainLoader = new PatternPrefetcher(stream, blockSize, 2);
+	return (true);
+    }
+
+    // dataWaitTime -- Return the total time, in seconds, that training has
+    // spent waiting for streamed patterns to be read.
+    public double dataWaitTime() {
+	if (trainLoader == null)
+	    return (0.0);
+	else
+	    return (trainLoader.waitSeconds());
+    }
+
+    // readReplayPatterns -- Read patterns from the specified file that the
+    // network has already been trained on, so that, when training goes on
+    // with new patterns, the given fraction of these earlier patterns,
+    // sampled at random, is mixed into each training epoch.  This keeps
+    // the network from forgetting what it has already learned.  Return
+    // false on error.
+    public boolean readReplayPatterns(String filename, double fraction) {
+	if ((fraction < 0.0) || (fraction > 1.0))
+	    return (false);
+	this.replayPats = loadPatterns(filename, "replay");
+	this.replayFraction = fraction;
+	this.replayBlock = null;
+	return (this.replayPats != null);
+    }
+
+    // readTestingPatterns -- Read testing patterns from the specified file,
+    // by way of the pattern cache, so that using the same file for both
+    // training and testing reads it only once.  Return false on error.
     public boolean readTestingPatterns(String filename) {
-	this.testPats = new PatternSet();
-	return (this.testPats.readPatterns(filename));
+	this.testPats = loadPatterns(filename, "testing");
+	return (this.testPats != null);
+    }
+
+    // loadPatterns -- Read patterns from the specified file, by way of the
+    // pattern cache, for the given purpose, recording a flight recorder
+    // event.  Return null on error.
+    PatternSet loadPatterns(String filename, String purpose) {
+	TrainingEvents.PatternsLoad event = new TrainingEvents.PatternsLoad();
+	event.begin();
+	PatternSet pats = PatternCache.load(filename);
+	if (event.shouldCommit()) {
+	    event.file = filename;
+	    event.purpose = purpose;
+	    event.patterns = (pats == null) ? 0 : pats.numPatterns();
+	    event.succeeded = (pats != null);
+	    event.commit();
+	}
+	return (pats);
     }
     
     // learningRate -- Return the current learning rate.
@@ -75,8 +180,64 @@ public class BP {
 	return (initialWtRange);
     }
 
+    // setTestingThreads -- Set the number of threads used to test the
+    // network.  With more than one, testing patterns are divided among
+    // the threads, but the SSE and any report are exactly the same as
+    // when testing with one thread.  Return the new number of threads.
+    public int setTestingThreads(int val) {
+	if (val > 0)
+	    testThreads = val;
+	return (testThreads);
+    }
+
+    // setRandomSeed -- Seed the random number generator used to sample
+    // initial weight values, so that training can be repeated exactly.
+    public void setRandomSeed(long seed) {
+	generator = new Random(seed);
+    }
+
     // initNetwork -- Initialize the network for training.
     public boolean initNetwork() {
+	if (!(findLayers()))
+	    return (false);
+	// Randomize weights ...
+	net.randomizeWeights((-0.5 * initialWtRange), (0.5 * initialWtRange),
+			     generator);
+	// Reset the training epoch counter ...
+	epochs = 0;
+	// Success!
+	return (true);
+    }
+
+    // initNetwork -- Initialize the network for training, starting from
+    // the weights in the given file, in either the text or the binary
+    // weight format, rather than from random weights.  This allows a
+    // trained network to be refined with new patterns.  Return false on
+    // error.
+    public boolean initNetwork(String wtsFilename) {
+	if (!(findLayers()))
+	    return (false);
+	// Load the starting weights ...
+	TrainingEvents.WeightsLoad event = new TrainingEvents.WeightsLoad();
+	event.begin();
+	boolean ok = net.readWeights(wtsFilename);
+	if (event.shouldCommit()) {
+	    event.file = wtsFilename;
+	    event.purpose = "warm start";
+	    event.succeeded = ok;
+	    event.commit();
+	}
+	if (!(ok))
+	    return (false);
+	// Reset the training epoch counter ...
+	epochs = 0;
+	// Success!
+	return (true);
+    }
+
+    // findLayers -- Find the input and output layers of the network.
+    // Return false on error.
+    boolean findLayers() {
 	// Find the input and output layers ...
 	inputLayer = null;
 	outputLayer = null;
@@ -88,34 +249,247 @@ public class BP {
 	    if (lay.outputs.isEmpty())
 		outputLayer = lay;
 	}
-	if ((inputLayer == null) || (outputLayer == null))
+	return ((inputLayer != null) && (outputLayer != null));
+    }
+
+    // writeCheckpoint -- Write everything needed to resume training to the
+    // given file:  the weights and bias weights, the pending weight deltas,
+    // the epoch count, the learning parameters, and the state of the
+    // random number generator.  The file is in the binary weight format,
+    // so it can also be read by Network.readWeights.  Return false on
+    // error.
+    public boolean writeCheckpoint(String filename) {
+	TrainingEvents.WeightsSave event = new TrainingEvents.WeightsSave();
+	event.begin();
+	byte[] state = trainingState();
+	boolean ok = (state != null) && WeightFile.write(net, filename, true,
+							 state);
+	if (event.shouldCommit()) {
+	    event.file = filename;
+	    event.epoch = epochs;
+	    event.succeeded = ok;
+	    event.commit();
+	}
+	return (ok);
+    }
+
+    // readCheckpoint -- Restore the network and the training process from
+    // a file written by "writeCheckpoint", in place of "initNetwork", so
+    // that training continues exactly as it would have had it never been
+    // interrupted.  Return false on error.
+    public boolean readCheckpoint(String filename) {
+	if (!(findLayers()))
 	    return (false);
-	// Randomize weights ...
-	net.randomizeWeights((-0.5 * initialWtRange), (0.5 * initialWtRange));
-	// Reset the training epoch counter ...
-	epochs = 0;
-	// Success!
-	return (true);
+	TrainingEvents.WeightsLoad event = new TrainingEvents.WeightsLoad();
+	event.begin();
+	byte[] state = WeightFile.readCheckpoint(net, filename);
+	boolean ok = (state != null) && restoreTrainingState(state);
+	if (event.shouldCommit()) {
+	    event.file = filename;
+	    event.purpose = "checkpoint";
+	    event.succeeded = ok;
+	    event.commit();
+	}
+	return (ok);
+    }
+
+    // trainingState -- Return the state of the training process, apart from
+    // the network itself, encoded as bytes.  Return null on error.
+    byte[] trainingState() {
+	try {
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    ObjectOutputStream out = new ObjectOutputStream(bytes);
+	    out.writeInt(epochs);
+	    out.writeDouble(lrate);
+	    out.writeDouble(initialWtRange);
+	    // The generator's seed is saved along with it ...
+	    out.writeObject(generator);
+	    out.close();
+	    return (bytes.toByteArray());
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (null);
+	}
+    }
+
+    // restoreTrainingState -- Restore the state of the training process
+    // from bytes produced by "trainingState".  Checkpoint files may come
+    // from anywhere, so the only object allowed in the state is the random
+    // number generator, and anything else is rejected before it is built.
+    // Return false on error.
+    boolean restoreTrainingState(byte[] state) {
+	try {
+	    ObjectInputStream in 
+		= new ObjectInputStream(new ByteArrayInputStream(state));
+	    in.setObjectInputFilter(STATE_FILTER);
+	    int savedEpochs = in.readInt();
+	    double savedLrate = in.readDouble();
+	    double savedWtRange = in.readDouble();
+	    Random savedGenerator = (Random) in.readObject();
+	    epochs = savedEpochs;
+	    lrate = savedLrate;
+	    initialWtRange = savedWtRange;
+	    generator = savedGenerator;
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	} catch (ClassNotFoundException e) {
+	    // Something went wrong ...
+	    return (false);
+	} catch (ClassCastException e) {
+	    // Something other than a generator was saved ...
+	    return (false);
+	}
+    }
+
+    // metrics -- Return the record of where training time has been
+    // spent.
+    public TrainingMetrics metrics() {
+	return (metrics);
     }
 
     // runTrainingEpoch -- Train the network on all of the patterns in the
     // training set, exposing the network to each pattern once and updating
-    // connection weights only once (i.e., in "batch mode").  Return the
+    // connection weights only once (i.e., in "batch mode").  When the
+    // training patterns are being streamed, they are read one block at a
+    // time, with weight deltas accumulating across blocks.  Return the
     // sum-squared error of the network, summed over all of the patterns
     // in the training set.  Return a negative value on error.
     public double runTrainingEpoch() {
 	// Initialize the sum squared error value for this epoch ...
 	double thisSSE = 0.0;
 	double totalSSE = 0.0;
+	TrainingEvents.Epoch event = new TrainingEvents.Epoch();
+	event.begin();
+	metrics.startEpoch();
 	// First, we need to clear out any old weight-change values ...
 	net.clearWeightDeltas();
-	// Iterate over all of the training patterns ...
-	for (Pattern pat : trainPats.patterns) {
-	    // Load the pattern into the network layers ...
-	    if (!(inputLayer.loadInput(pat.input)))
+	if (trainLoader != null) {
+	    // Start reading from the beginning of the pattern file ...
+	    if (!(trainLoader.startEpoch()))
+		return (-1.0);
+	    // Accumulate weight deltas over each block in turn ...
+	    PatternSet block;
+	    while ((block = trainLoader.nextBlock()) != null) {
+		thisSSE = accumulateWeightDeltas(block);
+		trainLoader.releaseBlock(block);
+		if (thisSSE < 0.0) {
+		    trainLoader.close();
+		    return (-1.0);
+		}
+		totalSSE = totalSSE + thisSSE;
+	    }
+	    if (trainLoader.failed())
+		return (-1.0);
+	} else {
+	    totalSSE = accumulateWeightDeltas(trainPats);
+	    if (totalSSE < 0.0)
+		return (-1.0);
+	}
+	if (replayPats != null) {
+	    // Mix in a random sample of the earlier patterns ...
+	    thisSSE = accumulateWeightDeltas(sampleReplayPatterns());
+	    if (thisSSE < 0.0)
+		return (-1.0);
+	    totalSSE = totalSSE + thisSSE;
+	}
+	// Now that all patterns have been seen, update weight values ...
+	long updateStart = System.nanoTime();
+	net.updateWeights(lrate);
+	metrics.recordUpdate(System.nanoTime() - updateStart);
+	// Increment the epoch counter ...
+	epochs = epochs + 1;
+	metrics.endEpoch(epochs, totalSSE);
+	if (event.shouldCommit()) {
+	    event.epoch = epochs;
+	    event.sse = totalSSE;
+	    event.patterns = metrics.lastEpochPatterns();
+	    event.commit();
+	}
+	// We're done ...
+	return (totalSSE);
+    }
+
+    // sampleReplayPatterns -- Return a set of earlier patterns, drawn at
+    // random (with replacement) from the replay set, for this epoch.  The
+    // same storage is reused from epoch to epoch.
+    PatternSet sampleReplayPatterns() {
+	int count = (int) Math.round(replayFraction 
+				     * replayPats.numPatterns());
+	if (replayBlock == null)
+	    replayBlock = new PatternSet(replayPats.inputN, 
+					 replayPats.outputN, count);
+	replayBlock.clear();
+	Pattern pat = new Pattern(replayPats.inputN, replayPats.outputN);
+	for (int k = 0; k < count; k++) {
+	    replayPats.getPattern(generator.nextInt(replayPats.numPatterns()),
+				  pat);
+	    replayBlock.addPattern(pat);
+	}
+	return (replayBlock);
+    }
+
+    // combinedSSE -- Return the sum-squared error of the network, summed
+    // over all of the training patterns and all of the replay patterns,
+    // without changing the weights.  This measures how well the network
+    // has learned the new patterns without forgetting the old ones.  The
+    // training patterns must be held in memory.  Return a negative value
+    // on error.
+    public double combinedSSE() {
+	if (trainPats == null)
+	    return (-1.0);
+	double newSSE = patternSetSSE(trainPats);
+	if ((newSSE < 0.0) || (replayPats == null))
+	    return (newSSE);
+	double oldSSE = patternSetSSE(replayPats);
+	if (oldSSE < 0.0)
+	    return (-1.0);
+	return (newSSE + oldSSE);
+    }
+
+    // patternSetSSE -- Return the sum-squared error of the network, summed
+    // over all of the patterns in the given set, without changing the
+    // weights.  Return a negative value on error.
+    double patternSetSSE(PatternSet pats) {
+	double thisSSE = 0.0;
+	double totalSSE = 0.0;
+	for (int p = 0; p < pats.numPatterns(); p++) {
+	    // Load the pattern into the network layers, straight from where
+	    // the set keeps it ...
+	    if (!(inputLayer.loadInput(pats.inputs, p * pats.inputN)))
+		return (-1.0);
+	    if (!(outputLayer.loadTarget(pats.targets, p * pats.outputN)))
+		return (-1.0);
+	    // Propagate activation forward ...
+	    net.computeActivation();
+	    // Record the error on this pattern ...
+	    thisSSE = outputLayer.act.squaredError(outputLayer.targ);
+	    if (thisSSE < 0.0)
+		return (-1.0);
+	    totalSSE = totalSSE + thisSSE;
+	}
+	return (totalSSE);
+    }
+
+    // accumulateWeightDeltas -- Expose the network to each of the patterns
+    // in the given set once, incrementing weight delta values without
+    // updating the weights themselves.  Return the sum-squared error of
+    // the network, summed over the given patterns.  Return a negative
+    // value on error.
+    double accumulateWeightDeltas(PatternSet pats) {
+	double thisSSE = 0.0;
+	double totalSSE = 0.0;
+	// Iterate over all of the patterns, loading each into the network
+	// layers straight from where the set keeps it ...
+	for (int p = 0; p < pats.numPatterns(); p++) {
+	    if (!(inputLayer.loadInput(pats.inputs, p * pats.inputN)))
 		return (-1.0);
-	    if (!(outputLayer.loadTarget(pat.target)))
+	    if (!(outputLayer.loadTarget(pats.targets, p * pats.outputN)))
 		return (-1.0);
+	    // Only some patterns have their phases timed ...
+	    boolean timed = metrics.startPattern();
+	    long start = timed ? System.nanoTime() : 0;
 	    // Propagate activation forward ...
 	    net.computeActivation();
 	    // Record the error on this pattern ...
@@ -123,18 +497,18 @@ public class BP {
 	    if (thisSSE < 0.0)
 		return (-1.0);
 	    totalSSE = totalSSE + thisSSE;
+	    long forwardEnd = timed ? System.nanoTime() : 0;
 	    // Propagate error backward ...
 	    net.computeDelta();
+	    long backwardEnd = timed ? System.nanoTime() : 0;
 	    // Calculate associated weight changes, incrementing weight 
 	    // delta values ...
 	    net.incrementWeightDeltas();
+	    if (timed)
+		metrics.recordPattern(start, forwardEnd, backwardEnd,
+				      System.nanoTime());
 	    // Done with this pattern ...
 	}
-	// Now that all patterns have been seen, update weight values ...
-	net.updateWeights(lrate);
-	// Increment the epoch counter ...
-	epochs = epochs + 1;
-	// We're done ...
 	return (totalSSE);
     }
 
@@ -145,20 +519,43 @@ public class BP {
     // error of the network, summed over all of the patterns in the testing
     // set.  Return a negative value on error.
     public double runTestingEpoch(OutputStream str) {
-	// Set up the output stream as a PrintWriter object ...
-	PrintWriter out = null;
+	return (runTestingEpoch(str, TestReport.TEXT));
+    }
+
+    // runTestingEpoch -- Test the network on all of the patterns in the
+    // testing set, as above, writing a report in the given TestReport
+    // format to the given stream.  The report is buffered, and flushed
+    // once the epoch is done.  Return a negative value on error.
+    public double runTestingEpoch(OutputStream str, int format) {
+	TestReport report = null;
 	if (str != null) {
-	    out = new PrintWriter(str, true);
+	    report = new TestReport(str, format, 
+				    testPats.inputN, testPats.outputN);
+	    if (!(report.start(testPats.numPatterns())))
+		return (-1.0);
 	}
+	double totalSSE = testPatterns(report);
+	if ((report != null) && (!(report.finish())))
+	    return (-1.0);
+	return (totalSSE);
+    }
+
+    // testPatterns -- Expose the network to each testing pattern once,
+    // adding each to the given report, if it is not null.  Return the
+    // sum-squared error, or a negative value on error.
+    double testPatterns(TestReport report) {
+	if (testThreads > 1)
+	    return (testPatternsParallel(report));
 	// Initialize the sum squared error value for this epoch ...
 	double thisSSE = 0.0;
 	double totalSSE = 0.0;
-	// Iterate over all of the testing patterns ...
-	for (Pattern pat : testPats.patterns) {
-	    // Load the pattern into the network layers ...
-	    if (!(inputLayer.loadInput(pat.input)))
+	// Iterate over all of the testing patterns, loading each into the
+	// network layers straight from where the set keeps it ...
+	for (int p = 0; p < testPats.numPatterns(); p++) {
+	    if (!(inputLayer.loadInput(testPats.inputs, p * testPats.inputN)))
 		return (-1.0);
-	    if (!(outputLayer.loadTarget(pat.target)))
+	    if (!(outputLayer.loadTarget(testPats.targets,
+					 p * testPats.outputN)))
 		return (-1.0);
 	    // Propagate activation forward ...
 	    net.computeActivation();
@@ -168,25 +565,101 @@ public class BP {
 		return (-1.0);
 	    totalSSE = totalSSE + thisSSE;
 	    // Output the result for this pattern ...
-	    if (out != null) {
-		out.printf("\n");
-		out.printf("INPUT:   ");
-		inputLayer.act.write(str);
-		out.printf("\n");
-		out.printf("OUTPUT:  ");
-		outputLayer.act.write(str);
-		out.printf("\n");
-		out.printf("TARGET:  ");
-		outputLayer.targ.write(str);
-		out.printf("\n");
-		out.printf("SSE = %f\n", thisSSE);
-	    }
+	    if ((report != null) &&
+		(!(report.write(inputLayer.act.el, outputLayer.act.el,
+				outputLayer.targ.el, thisSSE))))
+		return (-1.0);
 	    // Done with this pattern ...
 	}
 	// We're done ...
 	return (totalSSE);
     }
 
+    // testPatternsParallel -- Test the network on each testing pattern
+    // once, as "testPatterns" does, but divide the patterns into blocks
+    // that are computed on several threads at once.  Each thread passes
+    // its blocks through an InferenceModel copy of the network, which
+    // computes exactly the same outputs, using activation buffers of its
+    // own.  Blocks are collected in order, so the pattern errors are
+    // summed, and the report written, in the same order as with a single
+    // thread, giving exactly the same results.  Only a few blocks are in
+    // progress at any time.  Return the sum-squared error, or a negative
+    // value on error.
+    double testPatternsParallel(TestReport report) {
+	if (!(findLayers()))
+	    return (-1.0);
+	final InferenceModel model = new InferenceModel(net);
+	final PatternSet pats = testPats;
+	if ((model.inputN != pats.inputN) || (model.outputN != pats.outputN))
+	    return (-1.0);
+	final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+		protected double[] initialValue() {
+		    return (model.newBatchScratch(TEST_BLOCK_SIZE));
+		}
+	    };
+	int numPats = pats.numPatterns();
+	int inputN = pats.inputN;
+	int outputN = pats.outputN;
+	int maxPending = 2 * testThreads;
+	ExecutorService workers = Executors.newFixedThreadPool(testThreads);
+	Deque<Future<TestBlock>> pending = new ArrayDeque<Future<TestBlock>>();
+	double totalSSE = 0.0;
+	try {
+	    int next = 0;
+	    while ((next < numPats) || (!(pending.isEmpty()))) {
+		// Keep every thread busy, with one block waiting for each ...
+		while ((next < numPats) && (pending.size() < maxPending)) {
+		    final int first = next;
+		    final int count = Math.min(TEST_BLOCK_SIZE,
+					       numPats - first);
+		    pending.add(workers.submit(new Callable<TestBlock>() {
+			    public TestBlock call() {
+				return (testBlock(model, pats, first, count,
+						  scratch.get()));
+			    }
+			}));
+		    next = next + count;
+		}
+		// Collect the oldest block ...
+		TestBlock block = pending.remove().get();
+		for (int p = 0; p < block.count; p++) {
+		    totalSSE = totalSSE + block.sse[p];
+		    int pat = block.first + p;
+		    if ((report != null) &&
+			(!(report.write(pats.inputs, pat * inputN,
+					block.outputs, p * outputN,
+					pats.targets, pat * outputN,
+					block.sse[p]))))
+			return (-1.0);
+		}
+	    }
+	} catch (ExecutionException e) {
+	    // A block could not be computed ...
+	    return (-1.0);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return (-1.0);
+	} finally {
+	    workers.shutdownNow();
+	}
+	// We're done ...
+	return (totalSSE);
+    }
+
+    // testBlock -- Compute the outputs and errors of the given model for
+    // the given run of patterns, using the given scratch array.
+    static TestBlock testBlock(InferenceModel model, PatternSet pats,
+			       int first, int count, double[] scratch) {
+	TestBlock block = new TestBlock(first, count, model.outputN);
+	model.predictBatch(pats.inputs, first * pats.inputN, block.outputs, 0,
+			   count, scratch);
+	for (int p = 0; p < count; p++)
+	    block.sse[p] = model.squaredError(block.outputs, p * model.outputN,
+					      pats.targets,
+					      (first + p) * model.outputN);
+	return (block);
+    }
+
     // runTestingEpoch -- Test the network on all of the patterns in the
     // testing set, exposing the network to each pattern once.  Do not
     // change the network weight values in any way.  Return the sum-squared
@@ -0,0 +1,228 @@
+//
+// ConvergenceBenchmark
+//
+// This class measures how quickly BP learns a training set, rather than
+// how quickly it runs through each epoch.  For each combination of
+// learning rate, initial weight range, and number of hidden units, it
+// trains a network many times, each trial starting from weights drawn
+// with a different seed, until the SSE reaches the stopping criterion or
+// the epoch limit is hit, just as Pfour does.  It then reports the
+// distribution of the number of epochs and the time taken by the trials
+// that reached the criterion, along with the fraction that failed to.
+//
+// The network has one hidden layer between input and output layers sized
+// to the training set.  Options may be given on the command line, after
+// the training set file:
+//
+//   -rates R,...       learning rates (default 0.1,0.5,0.9)
+//   -ranges W,...      initial weight ranges (default 1.0)
+//   -hidden H,...      numbers of hidden units (default 2)
+//   -trials N          trials per combination (default 20)
+//   -max-epochs N      epoch limit for each trial (default 10000)
+//   -criterion E       SSE stopping criterion (default 0.05)
+//   -seed S            seed of the first trial (default 1)
+//   -results FILE      also append the results to FILE, one line of JSON
+//                      per combination
+//
+
+
+import java.io.*;
+import java.util.*;
+
+
+public class ConvergenceBenchmark {
+
+    PatternSet trainPats;     // the training set
+    double[] rates;           // learning rates
+    double[] ranges;          // initial weight ranges
+    int[] hidden;             // numbers of hidden units
+    int trials;               // trials per combination
+    int maxEpochs;            // epoch limit for each trial
+    double criterion;         // SSE stopping criterion
+    long seed;                // seed of the first trial
+
+    // Constructor with the training set specified ...
+    public ConvergenceBenchmark(PatternSet trainPats) {
+	this.trainPats = trainPats;
+	this.rates = new double[] {0.1, 0.5, 0.9};
+	this.ranges = new double[] {1.0};
+	this.hidden = new int[] {2};
+	this.trials = 20;
+	this.maxEpochs = 10000;
+	this.criterion = 0.05;
+	this.seed = 1;
+    }
+
+    // trial -- Train a fresh network with the given parameters, starting
+    // from weights drawn with the given seed, recording the number of
+    // epochs taken in the first element of the given array, and the time
+    // taken, in seconds, in the second.  Return true if the stopping
+    // criterion was reached, and false if the epoch limit was hit first or
+    // training failed.
+    boolean trial(double rate, double range, int hiddenN, long trialSeed,
+		  double[] result) {
+	BP bp = new BP();
+	Layer in = bp.net.createLayer(trainPats.inputN);
+	Layer mid = bp.net.createLayer(hiddenN);
+	Layer out = bp.net.createLayer(trainPats.outputN);
+	bp.net.createProjection(in, mid);
+	bp.net.createProjection(mid, out);
+	bp.trainPats = trainPats;
+	bp.setLearningRate(rate);
+	bp.setInitialWeightRange(range);
+	bp.setRandomSeed(trialSeed);
+	long start = System.nanoTime();
+	if (!(bp.initNetwork()))
+	    return (false);
+	double thisSSE = criterion + 1.0;
+	while ((bp.epochs < maxEpochs) && (thisSSE > criterion)) {
+	    thisSSE = bp.runTrainingEpoch();
+	    if (thisSSE < 0.0)
+		return (false);
+	}
+	result[0] = bp.epochs;
+	result[1] = (System.nanoTime() - start) / 1.0e9;
+	return (thisSSE <= criterion);
+    }
+
+    // percentile -- Return the given percentile (between 0 and 100) of the
+    // first "count" values in the given sorted array, or zero if there are
+    // none.
+    static double percentile(double[] sorted, int count, double percentile) {
+	if (count == 0)
+	    return (0.0);
+	int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+	index = Math.max(0, Math.min(count - 1, index));
+	return (sorted[index]);
+    }
+
+    // run -- Run all of the trials of one combination, returning a
+    // one-line summary and, in the second element of the given array, the
+    // same results as a line of JSON.
+    String run(double rate, double range, int hiddenN, String[] json) {
+	double[] epochs = new double[trials];
+	double[] seconds = new double[trials];
+	double[] result = new double[2];
+	int converged = 0;
+	for (int t = 0; t < trials; t++) {
+	    if (trial(rate, range, hiddenN, seed + t, result)) {
+		epochs[converged] = result[0];
+		seconds[converged] = result[1];
+		converged = converged + 1;
+	    }
+	}
+	Arrays.sort(epochs, 0, converged);
+	Arrays.sort(seconds, 0, converged);
+	double meanEpochs = 0.0;
+	for (int t = 0; t < converged; t++)
+	    meanEpochs = meanEpochs + epochs[t] / converged;
+	double failureRate = (double) (trials - converged) / trials;
+	json[0] = String.format
+	    (Locale.ROOT,
+	     "{\"time\": \"%s\", \"rate\": %s, \"range\": %s, \"hidden\": %d, "
+	     + "\"trials\": %d, \"criterion\": %s, \"max_epochs\": %d, "
+	     + "\"failure_rate\": %.4f, \"epochs_min\": %.0f, "
+	     + "\"epochs_median\": %.0f, \"epochs_mean\": %.1f, "
+	     + "\"epochs_p90\": %.0f, \"epochs_max\": %.0f, "
+	     + "\"seconds_median\": %.6f, \"seconds_p90\": %.6f}",
+	     java.time.Instant.now(), rate, range, hiddenN, trials,
+	     criterion, maxEpochs, failureRate,
+	     percentile(epochs, converged, 0.0),
+	     percentile(epochs, converged, 50.0), meanEpochs,
+	     percentile(epochs, converged, 90.0),
+	     percentile(epochs, converged, 100.0),
+	     percentile(seconds, converged, 50.0),
+	     percentile(seconds, converged, 90.0));
+	return (String.format
+		("Rate %s, range %s, hidden %d:  %d of %d failed (%.1f%%), "
+		 + "epochs min/median/p90/max = %.0f/%.0f/%.0f/%.0f, "
+		 + "seconds median/p90 = %.3f/%.3f.",
+		 rate, range, hiddenN, trials - converged, trials,
+		 100.0 * failureRate,
+		 percentile(epochs, converged, 0.0),
+		 percentile(epochs, converged, 50.0),
+		 percentile(epochs, converged, 90.0),
+		 percentile(epochs, converged, 100.0),
+		 percentile(seconds, converged, 50.0),
+		 percentile(seconds, converged, 90.0)));
+    }
+
+    // parseDoubles -- Return the comma-separated values in the given
+    // string.
+    static double[] parseDoubles(String list) {
+	String[] items = list.split(",");
+	double[] vals = new double[items.length];
+	for (int i = 0; i < items.length; i++)
+	    vals[i] = Double.parseDouble(items[i].trim());
+	return (vals);
+    }
+
+    // main -- Run every combination on the given training set.
+    public static void main(String[] args) {
+	if (args.length < 1) {
+	    System.err.println("Usage:  java ConvergenceBenchmark PATTERNS "
+			       + "[OPTIONS]");
+	    return;
+	}
+	PatternSet pats = PatternCache.load(args[0]);
+	if (pats == null) {
+	    System.err.println("Unable to read training pattern file.");
+	    return;
+	}
+	ConvergenceBenchmark bench = new ConvergenceBenchmark(pats);
+	String resultsFilename = null;
+	for (int a = 1; a < args.length; a++) {
+	    if (args[a].equals("-rates") && (a + 1 < args.length)) {
+		bench.rates = parseDoubles(args[++a]);
+	    } else if (args[a].equals("-ranges") && (a + 1 < args.length)) {
+		bench.ranges = parseDoubles(args[++a]);
+	    } else if (args[a].equals("-hidden") && (a + 1 < args.length)) {
+		bench.hidden = TrainingBenchmark.parseList(args[++a]);
+	    } else if (args[a].equals("-trials") && (a + 1 < args.length)) {
+		bench.trials = Integer.parseInt(args[++a]);
+	    } else if (args[a].equals("-max-epochs") &&
+		       (a + 1 < args.length)) {
+		bench.maxEpochs = Integer.parseInt(args[++a]);
+	    } else if (args[a].equals("-criterion") && (a + 1 < args.length)) {
+		bench.criterion = Double.parseDouble(args[++a]);
+	    } else if (args[a].equals("-seed") && (a + 1 < args.length)) {
+		bench.seed = Long.parseLong(args[++a]);
+	    } else if (args[a].equals("-results") && (a + 1 < args.length)) {
+		resultsFilename = args[++a];
+	    } else {
+		System.err.println("Unknown option: " + args[a]);
+		return;
+	    }
+	}
+	if (bench.trials < 1) {
+	    System.err.println("Invalid number of trials.");
+	    return;
+	}
+	try {
+	    PrintWriter results = null;
+	    if (resultsFilename != null)
+		results = new PrintWriter(new FileWriter(resultsFilename,
+							  true));
+	    try {
+		String[] json = new String[1];
+		for (double rate : bench.rates)
+		    for (double range : bench.ranges)
+			for (int hiddenN : bench.hidden) {
+			    System.out.println(bench.run(rate, range, hiddenN,
+							 json));
+			    if (results != null) {
+				results.println(json[0]);
+				results.flush();
+			    }
+			}
+	    } finally {
+		if (results != null)
+		    results.close();
+	    }
+	} catch (IOException e) {
+	    System.err.println("Unable to write results file.");
+	}
+    }
+
+
+}
@@ -0,0 +1,280 @@
+//
+// CostModel
+//
+// This class estimates what a network will cost to train before any
+// training is done:  the heap taken by the weights, the weight deltas
+// (gradients), and the activation state of each layer and projection,
+// and the arithmetic done for each training pattern, in the forward pass
+// (activation and error) and in the backward pass (unit deltas and weight
+// deltas), along with the arithmetic of each weight update.  Arithmetic is
+// counted in floating point operations (FLOPs), with every addition,
+// subtraction, multiplication, division, and exponential counting as one.
+//
+// Heap sizes are for a 64-bit JVM with compressed object references, the
+// default for heaps under 32GB.  They cover the objects each part of the
+// network holds on to, not the temporary vectors and matrices allocated
+// while each pattern is processed, which TrainingMetrics measures.
+//
+// FLOPs only become time once the speed of the machine is known, so a
+// short calibration run trains a copy of a network on random patterns and
+// measures the time taken per FLOP in processing patterns, leaving out
+// the weight updates, which happen once per epoch and so would count for
+// far more in a short calibration epoch than in a real one.  That rate is
+// most accurate for networks of a similar shape, since small layers spend
+// relatively more time on overhead than on arithmetic.
+//
+// Given the number of patterns and the layer sizes, "main" prints the
+// estimates and the predicted time per epoch.
+//
+
+
+import java.util.*;
+
+
+public class CostModel {
+
+    static final int OBJECT_HEADER = 12;    // bytes in an object header
+    static final int ARRAY_HEADER = 16;     // bytes in an array header
+    static final int REFERENCE = 4;         // bytes in a compressed reference
+    static final int SQUASH_FLOPS = 7;      // FLOPs in the logistic function
+    static final int DERIVATIVE_FLOPS = 8;  // FLOPs in its derivative
+    static final int CALIBRATION_PATTERNS = 64;      // patterns per epoch
+    static final double CALIBRATION_SECONDS = 1.0;   // time measured
+
+    // Estimate -- The costs of one part of a network, or of a whole
+    // network.
+    public static class Estimate {
+	public String name;          // what is being described
+	public long weightBytes;     // heap holding the weights
+	public long gradientBytes;   // heap holding the weight deltas
+	public long activationBytes; // heap holding the activation state
+	public long forwardFlops;    // FLOPs per pattern, forward
+	public long backwardFlops;   // FLOPs per pattern, backward
+	public long updateFlops;     // FLOPs per weight update
+
+	// Constructor with the name specified ...
+	public Estimate(String name) {
+	    this.name = name;
+	}
+
+	// add -- Add the costs of another part to these.
+	public void add(Estimate e) {
+	    weightBytes = weightBytes + e.weightBytes;
+	    gradientBytes = gradientBytes + e.gradientBytes;
+	    activationBytes = activationBytes + e.activationBytes;
+	    forwardFlops = forwardFlops + e.forwardFlops;
+	    backwardFlops = backwardFlops + e.backwardFlops;
+	    updateFlops = updateFlops + e.updateFlops;
+	}
+
+	// totalBytes -- Return the heap held, in bytes.
+	public long totalBytes() {
+	    return (weightBytes + gradientBytes + activationBytes);
+	}
+
+	// epochFlops -- Return the FLOPs in a training epoch over the given
+	// number of patterns.
+	public double epochFlops(long numPats) {
+	    return ((double) numPats * (forwardFlops + backwardFlops)
+		    + updateFlops);
+	}
+
+	// toString -- Return the costs as a line of a table.
+	public String toString() {
+	    return (String.format("%-16s %12d %12d %12d %12d %12d", name,
+				  weightBytes, gradientBytes, activationBytes,
+				  forwardFlops, backwardFlops));
+	}
+    }
+
+    // align -- Round the given size up to a multiple of eight bytes, as
+    // objects are laid out on the heap.
+    static long align(long bytes) {
+	return ((bytes + 7) & ~7L);
+    }
+
+    // doubleArrayBytes -- Return the heap taken by an array of the given
+    // number of doubles.
+    static long doubleArrayBytes(long n) {
+	return (align(ARRAY_HEADER + 8 * n));
+    }
+
+    // vectorBytes -- Return the heap taken by a Vector of the given size.
+    static long vectorBytes(int n) {
+	return (align(OBJECT_HEADER + 4 + REFERENCE) + doubleArrayBytes(n));
+    }
+
+    // matrixBytes -- Return the heap taken by a Matrix of the given size,
+    // which is stored as an array of rows.
+    static long matrixBytes(int rows, int cols) {
+	return (align(OBJECT_HEADER + 4 + 4 + REFERENCE)
+		+ align(ARRAY_HEADER + (long) REFERENCE * rows)
+		+ rows * doubleArrayBytes(cols));
+    }
+
+    // estimate -- Return the costs of the given layer, apart from the
+    // projections into it.
+    public static Estimate estimate(Layer lay, String name) {
+	Estimate e = new Estimate(name);
+	int n = lay.n;
+	e.weightBytes = vectorBytes(n);               // bias
+	e.gradientBytes = vectorBytes(n);             // biasDelta
+	e.activationBytes = 4 * vectorBytes(n);       // net, act, targ, delta
+	if (!(lay.inputs.isEmpty())) {
+	    // Squash the net input ...
+	    e.forwardFlops = (long) SQUASH_FLOPS * n;
+	    if (lay.outputs.isEmpty()) {
+		// Output layer error and deltas ...
+		e.forwardFlops = e.forwardFlops + 3L * n;
+		e.backwardFlops = (2L + DERIVATIVE_FLOPS) * n;
+	    } else {
+		// Hidden layer deltas, after summing the error ...
+		e.backwardFlops = (1L + DERIVATIVE_FLOPS) * n;
+	    }
+	}
+	// Bias deltas accumulate for every layer ...
+	e.backwardFlops = e.backwardFlops + n;
+	e.updateFlops = 2L * n;
+	return (e);
+    }
+
+    // estimate -- Return the costs of the given projection.
+    public static Estimate estimate(Projection p, String name) {
+	Estimate e = new Estimate(name);
+	long connections = (long) p.inputN * p.outputN;
+	e.weightBytes = matrixBytes(p.outputN, p.inputN);    // W
+	e.gradientBytes = matrixBytes(p.outputN, p.inputN);  // deltaW
+	e.activationBytes = 0;
+	// Matrix-vector product, summed into the net input ...
+	e.forwardFlops = 2 * connections + p.outputN;
+	// Outer product, summed into the weight deltas ...
+	e.backwardFlops = 2 * connections;
+	if ((p.input != null) && (!(p.input.inputs.isEmpty()))) {
+	    // Error passed back to a hidden layer ...
+	    e.backwardFlops = e.backwardFlops + 2 * connections + p.inputN;
+	}
+	e.updateFlops = 2 * connections;
+	return (e);
+    }
+
+    // estimate -- Return the costs of every layer and projection in the
+    // given network, in order of activation flow, with each layer
+    // followed by the projections into it.
+    public static List<Estimate> estimate(Network net) {
+	List<Estimate> parts = new ArrayList<Estimate>();
+	int l = 0;
+	for (Layer lay : net.layers) {
+	    parts.add(estimate(lay, "layer " + l));
+	    for (Projection p : lay.inputs)
+		parts.add(estimate(p, "  from layer "
+				   + net.layers.indexOf(p.input)));
+	    l = l + 1;
+	}
+	return (parts);
+    }
+
+    // total -- Return the costs of the given network as a whole.
+    public static Estimate total(Network net) {
+	Estimate sum = new Estimate("total");
+	for (Estimate e : estimate(net))
+	    sum.add(e);
+	return (sum);
+    }
+
+    // calibrate -- Train a copy of the given network on random patterns,
+    // for about CALIBRATION_SECONDS after an equal time to warm up, and
+    // return the measured time per FLOP spent on patterns, in seconds.
+    // Return a negative value on error.
+    public static double calibrate(Network net) {
+	BP bp = new BP();
+	bp.net = new Network(net);
+	bp.setRandomSeed(1);
+	if (!(bp.initNetwork()))
+	    return (-1.0);
+	Random generator = new Random(1);
+	PatternSet pats = new PatternSet(bp.inputLayer.n, bp.outputLayer.n,
+					 CALIBRATION_PATTERNS);
+	Pattern pat = new Pattern(bp.inputLayer.n, bp.outputLayer.n);
+	for (int k = 0; k < CALIBRATION_PATTERNS; k++) {
+	    for (int i = 0; i < bp.inputLayer.n; i++)
+		pat.input.set(i, generator.nextDouble());
+	    for (int i = 0; i < bp.outputLayer.n; i++)
+		pat.target.set(i, generator.nextDouble());
+	    pats.addPattern(pat);
+	}
+	bp.trainPats = pats;
+	// Warm up, then measure ...
+	long limit = (long) (CALIBRATION_SECONDS * 1.0e9);
+	long start = System.nanoTime();
+	while (System.nanoTime() - start < limit)
+	    if (bp.runTrainingEpoch() < 0.0)
+		return (-1.0);
+	TrainingMetrics metrics = bp.metrics();
+	long patterns = metrics.patterns();
+	double seconds = metrics.epochSeconds() - metrics.updateSeconds();
+	start = System.nanoTime();
+	do {
+	    if (bp.runTrainingEpoch() < 0.0)
+		return (-1.0);
+	} while (System.nanoTime() - start < limit);
+	patterns = metrics.patterns() - patterns;
+	seconds = metrics.epochSeconds() - metrics.updateSeconds() - seconds;
+	Estimate cost = total(bp.net);
+	return (seconds / (patterns * (double) (cost.forwardFlops
+						+ cost.backwardFlops)));
+    }
+
+    // main -- Print the estimated costs of training a network with the
+    // given layer sizes, fully connected from each layer to the next, on
+    // the given number of patterns, and the predicted time per epoch.
+    public static void main(String[] args) {
+	if (args.length < 2) {
+	    System.err.println("Usage:  java CostModel PATTERNS "
+			       + "LAYER-SIZES");
+	    return;
+	}
+	long numPats = Long.parseLong(args[0]);
+	int[] sizes = TrainingBenchmark.parseList(args[1]);
+	if ((numPats < 0) || (sizes.length < 2)) {
+	    System.err.println("Invalid number of patterns or layers.");
+	    return;
+	}
+	Network net = new Network();
+	Layer previous = null;
+	for (int size : sizes) {
+	    Layer lay = net.createLayer(size);
+	    if (lay == null) {
+		System.err.println("Invalid layer size.");
+		return;
+	    }
+	    if (previous != null)
+		net.createProjection(previous, lay);
+	    previous = lay;
+	}
+	System.out.println(String.format("%-16s %12s %12s %12s %12s %12s",
+					 "", "weight B", "gradient B",
+					 "activation B", "fwd FLOPs",
+					 "bwd FLOPs"));
+	for (CostModel.Estimate e : net.estimateCosts())
+	    System.out.println(e);
+	CostModel.Estimate total = net.totalCost();
+	System.out.println(total);
+	System.out.println(String.format("Heap held by the network = %d "
+					 + "bytes.", total.totalBytes()));
+	System.out.println(String.format("FLOPs per epoch = %.4g.",
+					 total.epochFlops(numPats)));
+	double secondsPerFlop = net.calibrateFlopSeconds();
+	if (secondsPerFlop < 0.0) {
+	    System.err.println("Calibration failed.");
+	    return;
+	}
+	System.out.println(String.format("Measured %.4g FLOPs per second.",
+					 1.0 / secondsPerFlop));
+	System.out.println(String.format("Predicted epoch time = %.4g "
+					 + "seconds.",
+					 net.predictEpochSeconds
+					 (numPats, secondsPerFlop)));
+    }
+
+
+}
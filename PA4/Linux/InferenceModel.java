@@ -0,0 +1,360 @@
+//
+// InferenceModel
+//
+// This class implements a trained network in a form suited only to
+// computing outputs.  It holds just the weights, bias weights, and
+// activation ranges, packed into flat arrays, with none of the weight
+// deltas, unit deltas, targets, or per-layer activation vectors that a
+// Network keeps for training.  The model is never changed by computing
+// outputs, so one model may be shared by any number of threads, each
+// using its own scratch array for activation values.  The outputs are
+// computed in exactly the same order of operations as in a Network, so
+// they match the outputs of the Network bit for bit.
+//
+
+
+import java.io.*;
+import java.util.*;
+
+
+public class InferenceModel {
+
+    public int inputN;          // number of input units
+    public int outputN;         // number of output units
+    int numLayers;              // number of layers
+    int[] size;                 // number of units in each layer
+    double[] min;               // minimum activation level of each layer
+    double[] max;               // maximum activation level of each layer
+    int[] unitOffset;           // start of each layer's units in scratch
+    int[] firstProjection;      // first projection into each layer
+    int[] projInput;            // input layer of each projection
+    int[] projOffset;           // start of each projection's weights
+    double[] bias;              // bias weights, at each layer's unit offset
+    double[] weights;           // weight matrices, in row-major order
+    int inputLayer;             // index of the input layer
+    int outputLayer;            // index of the output layer
+    int scratchN;               // number of units in all layers
+
+    // Constructor with the network specified.  The model takes a copy of
+    // the network's current weights ...
+    public InferenceModel(Network net) {
+	List<Layer> layers = new ArrayList<Layer>(net.layers);
+	int[] sizes = new int[layers.size()];
+	double[] mins = new double[layers.size()];
+	double[] maxs = new double[layers.size()];
+	int numProjections = 0;
+	for (int l = 0; l < layers.size(); l++) {
+	    sizes[l] = layers.get(l).n;
+	    mins[l] = layers.get(l).min;
+	    maxs[l] = layers.get(l).max;
+	    numProjections = numProjections + layers.get(l).inputs.size();
+	}
+	int[] inputs = new int[numProjections];
+	int[] outputs = new int[numProjections];
+	int k = 0;
+	for (int l = 0; l < layers.size(); l++) {
+	    for (Projection p : layers.get(l).inputs) {
+		inputs[k] = layers.indexOf(p.input);
+		outputs[k] = l;
+		k = k + 1;
+	    }
+	}
+	if (!(allocate(sizes, mins, maxs, inputs, outputs)))
+	    throw new IllegalArgumentException("network has no input or "
+					       + "output layer, or too many "
+					       + "weights");
+	// Copy bias weights ...
+	for (int l = 0; l < numLayers; l++)
+	    System.arraycopy(layers.get(l).bias.el, 0,
+			     bias, unitOffset[l], size[l]);
+	// Copy weight matrices ...
+	k = 0;
+	for (int l = 0; l < numLayers; l++) {
+	    for (Projection p : layers.get(l).inputs) {
+		for (int i = 0; i < p.outputN; i++)
+		    System.arraycopy(p.W.el[i], 0, weights,
+				     projOffset[k] + i * p.inputN, p.inputN);
+		k = k + 1;
+	    }
+	}
+    }
+
+    // Constructor used when reading a model from a file ...
+    InferenceModel() {
+    }
+
+    // readWeights -- Read a model from the given file, in the binary
+    // weight format written by Network.writeWeightsBinary.  The topology
+    // of the network is taken from the file, so no Network is needed.
+    // Return null on error.
+    public static InferenceModel readWeights(String wtsFilename) {
+	WeightFile in = WeightFile.open(wtsFilename);
+	if (in == null)
+	    return (null);
+	try {
+	    int flags = in.getInt();
+	    in.skipState(flags);
+	    // Read the topology ...
+	    int nLayers = in.getInt();
+	    // Each layer takes an int and two doubles ...
+	    if ((nLayers < 1) || (20L * nLayers > in.remaining()))
+		return (null);
+	    int[] sizes = new int[nLayers];
+	    double[] mins = new double[nLayers];
+	    double[] maxs = new double[nLayers];
+	    for (int l = 0; l < nLayers; l++) {
+		sizes[l] = in.getInt();
+		mins[l] = in.getDouble();
+		maxs[l] = in.getDouble();
+		if ((sizes[l] < 1) || (!(mins[l] < maxs[l])))
+		    return (null);
+	    }
+	    int numProjections = in.getInt();
+	    // Each projection takes two ints ...
+	    if ((numProjections < 0) ||
+		(8L * numProjections > in.remaining()))
+		return (null);
+	    int[] inputs = new int[numProjections];
+	    int[] outputs = new int[numProjections];
+	    for (int k = 0; k < numProjections; k++) {
+		inputs[k] = in.getInt();
+		outputs[k] = in.getInt();
+		if ((inputs[k] < 0) || (inputs[k] >= nLayers) ||
+		    (outputs[k] < 0) || (outputs[k] >= nLayers) ||
+		    ((k > 0) && (outputs[k] < outputs[k - 1])))
+		    return (null);
+	    }
+	    // Make sure that the file holds every weight before allocating
+	    // room for them ...
+	    long numValues = 0;
+	    for (int l = 0; l < nLayers; l++)
+		numValues = numValues + sizes[l];
+	    for (int k = 0; k < numProjections; k++)
+		numValues = numValues
+		    + (long) sizes[outputs[k]] * sizes[inputs[k]];
+	    if (8 * numValues > in.remaining())
+		return (null);
+	    InferenceModel model = new InferenceModel();
+	    if (!(model.allocate(sizes, mins, maxs, inputs, outputs)))
+		return (null);
+	    // Read bias weights and weight matrices, skipping any deltas ...
+	    in.getDoubles(model.bias);
+	    in.getDoubles(model.weights);
+	    return (model);
+	} catch (IOException e) {
+	    // The file is too short, or could not be read ...
+	    return (null);
+	} finally {
+	    in.close();
+	}
+    }
+
+    // allocate -- Set up the topology and allocate the weight storage for
+    // layers of the given sizes and activation ranges, connected by
+    // projections between the given layers.  Projections must be ordered
+    // by output layer.  Return false, allocating no weights, if there is
+    // no input layer or no output layer, or if the units or the weights
+    // are too many to be stored in an array.
+    boolean allocate(int[] sizes, double[] mins, double[] maxs,
+		     int[] inputs, int[] outputs) {
+	numLayers = sizes.length;
+	size = sizes;
+	min = mins;
+	max = maxs;
+	projInput = inputs;
+	// Lay out the units of each layer end to end ...
+	unitOffset = new int[numLayers];
+	long numUnits = 0;
+	for (int l = 0; l < numLayers; l++) {
+	    unitOffset[l] = (int) Math.min(numUnits, Integer.MAX_VALUE);
+	    numUnits = numUnits + size[l];
+	}
+	// Lay out the weight matrices end to end ...
+	firstProjection = new int[numLayers + 1];
+	projOffset = new int[inputs.length];
+	long numWeights = 0;
+	int k = 0;
+	for (int l = 0; l < numLayers; l++) {
+	    firstProjection[l] = k;
+	    while ((k < inputs.length) && (outputs[k] == l)) {
+		projOffset[k] = (int) Math.min(numWeights, Integer.MAX_VALUE);
+		numWeights = numWeights + (long) size[l] * size[inputs[k]];
+		k = k + 1;
+	    }
+	}
+	firstProjection[numLayers] = k;
+	// The first layer with no inputs is the input layer, and the last
+	// layer with no outputs is the output layer, just as in BP ...
+	boolean[] hasOutputs = new boolean[numLayers];
+	for (int p = 0; p < inputs.length; p++)
+	    hasOutputs[inputs[p]] = true;
+	inputLayer = -1;
+	outputLayer = -1;
+	for (int l = 0; l < numLayers; l++) {
+	    boolean hasInputs = (firstProjection[l] < firstProjection[l + 1]);
+	    if ((inputLayer < 0) && (!(hasInputs)))
+		inputLayer = l;
+	    if (!(hasOutputs[l]))
+		outputLayer = l;
+	}
+	// Scratch arrays hold two values for every unit ...
+	if ((inputLayer < 0) || (outputLayer < 0) ||
+	    (2 * numUnits > Integer.MAX_VALUE) ||
+	    (numWeights > Integer.MAX_VALUE))
+	    return (false);
+	scratchN = (int) numUnits;
+	bias = new double[scratchN];
+	weights = new double[(int) numWeights];
+	inputN = size[inputLayer];
+	outputN = size[outputLayer];
+	return (true);
+    }
+
+    // newScratch -- Return a freshly allocated array large enough to hold
+    // the net input and activation values of every unit in the model.
+    public double[] newScratch() {
+	return (new double[2 * scratchN]);
+    }
+
+    // predict -- Compute the output vector for the given input vector,
+    // placing it in the given output array.
+    public void predict(double[] in, double[] out) {
+	predict(in, 0, out, 0, newScratch());
+    }
+
+    // predict -- Compute the output vector for the input vector starting at
+    // the given offset in the input array, placing it at the given offset
+    // in the output array, and using the given scratch array, obtained
+    // from "newScratch", to hold activation values.
+    public void predict(double[] in, int inOffset, double[] out,
+			int outOffset, double[] scratch) {
+	System.arraycopy(in, inOffset, scratch, unitOffset[inputLayer],
+			 inputN);
+	for (int l = 0; l < numLayers; l++) {
+	    int first = firstProjection[l];
+	    int last = firstProjection[l + 1];
+	    if (first == last)
+		continue;
+	    int base = unitOffset[l];
+	    int net = scratchN + base;
+	    int n = size[l];
+	    // Start the net inputs with the bias weights ...
+	    System.arraycopy(bias, base, scratch, net, n);
+	    // Add in the contribution of each projection ...
+	    for (int k = first; k < last; k++) {
+		int from = unitOffset[projInput[k]];
+		int fromN = size[projInput[k]];
+		int w = projOffset[k];
+		for (int i = 0; i < n; i++) {
+		    double currentValue = 0.0;
+		    for (int j = 0; j < fromN; j++)
+			currentValue = currentValue
+			    + (scratch[from + j] * weights[w + j]);
+		    scratch[net + i] = scratch[net + i] + currentValue;
+		    w = w + fromN;
+		}
+	    }
+	    // Squash the net inputs into the activation range ...
+	    double range = max[l] - min[l];
+	    for (int i = 0; i < n; i++) {
+		double logisticValue 
+		    = 1.0 / (1.0 + Math.exp(- scratch[net + i]));
+		scratch[base + i] = (logisticValue * range) + min[l];
+	    }
+	}
+	System.arraycopy(scratch, unitOffset[outputLayer], out, outOffset,
+			 outputN);
+    }
+
+    // newBatchScratch -- Return a freshly allocated array large enough to
+    // hold the net input and activation values of every unit in the model
+    // for the given number of input vectors at once.
+    public double[] newBatchScratch(int count) {
+	return (new double[2 * scratchN * count]);
+    }
+
+    // predictBatch -- Compute the output vectors for the given number of
+    // input vectors, stored back to back in the input array, placing them
+    // back to back in the output array, and using the given scratch array,
+    // obtained from "newBatchScratch", to hold activation values.  The
+    // whole batch passes through each weight matrix together, so each row
+    // of weights is used for every input vector while it is still in the
+    // cache.  The results are the same as calling "predict" on each input
+    // vector in turn.
+    public void predictBatch(double[] in, double[] out, int count,
+			     double[] scratch) {
+	predictBatch(in, 0, out, 0, count, scratch);
+    }
+
+    // predictBatch -- Compute the output vectors for the given number of
+    // input vectors, as above, with the input vectors starting at the
+    // given offset in the input array and the output vectors placed
+    // starting at the given offset in the output array.
+    public void predictBatch(double[] in, int inOffset, double[] out,
+			     int outOffset, int count, double[] scratch) {
+	int stride = 2 * scratchN;
+	for (int b = 0; b < count; b++)
+	    System.arraycopy(in, inOffset + b * inputN, scratch, 
+			     b * stride + unitOffset[inputLayer], inputN);
+	for (int l = 0; l < numLayers; l++) {
+	    int first = firstProjection[l];
+	    int last = firstProjection[l + 1];
+	    if (first == last)
+		continue;
+	    int base = unitOffset[l];
+	    int net = scratchN + base;
+	    int n = size[l];
+	    // Start the net inputs with the bias weights ...
+	    for (int b = 0; b < count; b++)
+		System.arraycopy(bias, base, scratch, b * stride + net, n);
+	    // Add in the contribution of each projection ...
+	    for (int k = first; k < last; k++) {
+		int from = unitOffset[projInput[k]];
+		int fromN = size[projInput[k]];
+		int w = projOffset[k];
+		for (int i = 0; i < n; i++) {
+		    for (int b = 0; b < count; b++) {
+			int s = b * stride;
+			double currentValue = 0.0;
+			for (int j = 0; j < fromN; j++)
+			    currentValue = currentValue
+				+ (scratch[s + from + j] * weights[w + j]);
+			scratch[s + net + i] = scratch[s + net + i] 
+			    + currentValue;
+		    }
+		    w = w + fromN;
+		}
+	    }
+	    // Squash the net inputs into the activation range ...
+	    double range = max[l] - min[l];
+	    for (int b = 0; b < count; b++) {
+		int s = b * stride;
+		for (int i = 0; i < n; i++) {
+		    double logisticValue 
+			= 1.0 / (1.0 + Math.exp(- scratch[s + net + i]));
+		    scratch[s + base + i] = (logisticValue * range) + min[l];
+		}
+	    }
+	}
+	for (int b = 0; b < count; b++)
+	    System.arraycopy(scratch, b * stride + unitOffset[outputLayer],
+			     out, outOffset + b * outputN, outputN);
+    }
+
+    // squaredError -- Return one half of the summed squared deviation
+    // between the output vector and the target vector starting at the given
+    // offsets in the given arrays, computed just as Vector.squaredError
+    // computes it.
+    public double squaredError(double[] out, int outOffset,
+			       double[] targ, int targOffset) {
+	double sum = 0.0;
+	for (int i = 0; i < outputN; i++) {
+	    double deviation = out[outOffset + i]
+		+ (targ[targOffset + i] * -1.0);
+	    sum = sum + (deviation * deviation);
+	}
+	return (0.5 * sum);
+    }
+
+
+}
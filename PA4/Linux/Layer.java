@@ -1,4 +1,3 @@
-<<<<<<< HEAD
 //
 // Layer
 //
@@ -19,6 +18,7 @@ public class Layer {
     public Vector net;                    // net input levels of units
     public Vector act;                    // activation levels of units
     public Vector targ;                   // current target for output layers
+    Vector targStore;                     // own storage for copied targets
     public Vector delta;                  // unit delta values
     public Vector bias;                   // unit bias weights
     public Vector biasDelta;              // bias weight delta values
@@ -33,6 +33,7 @@ public class Layer {
 	this.net = null;
 	this.act = null;
 	this.targ = null;
+	this.targStore = null;
 	this.delta = null;
 	this.bias = null;
 	this.biasDelta = null;
@@ -49,6 +50,7 @@ public class Layer {
 	    this.net = new Vector(size);
 	    this.act = new Vector(size);
 	    this.targ = null;
+	    this.targStore = null;
 	    this.delta = new Vector(size);
 	    this.bias = new Vector(size);
 	    this.biasDelta = new Vector(size);
@@ -61,6 +63,7 @@ public class Layer {
 	    this.net = null;
 	    this.act = null;
 	    this.targ = null;
+	    this.targStore = null;
 	    this.delta = null;
 	    this.bias = null;
 	    this.biasDelta = null;
@@ -83,6 +86,7 @@ public class Layer {
 	    net = new Vector(size);
 	    act = new Vector(size);
 	    targ = null;
+	    targStore = null;
 	    delta = new Vector(size);
 	    bias = new Vector(size);
 	    biasDelta = new Vector(size);
@@ -93,6 +97,7 @@ public class Layer {
 	    net = null;
 	    act = null;
 	    targ = null;
+	    targStore = null;
 	    delta = null;
 	    bias = null;
 	    biasDelta = null;
@@ -158,6 +163,13 @@ public class Layer {
 	bias.randomize(min, max);
     }
 
+    // randomizeBiases -- Set the bias weights to random values sampled
+    // uniformly from the given range, using the given random number
+    // generator.
+    public void randomizeBiases(double min, double max, Random generator) {
+	bias.randomize(min, max, generator);
+    }
+
     // loadInput -- Load the given vector of values into the activation 
     // vector for this layer.  This allows this layer to act as an input
     // layer.  Return false on error.
@@ -172,6 +184,21 @@ public class Layer {
 	}
     }
 
+    // loadInput -- Load the values starting at the given offset in the
+    // given array into the activation vector for this layer, so that a
+    // pattern may be loaded straight from where a pattern set keeps it.
+    // Return false on error.
+    public boolean loadInput(double[] vals, int offset) {
+	if (act.valid() && (vals != null) && (offset >= 0) &&
+	    (offset <= vals.length - act.dim())) {
+	    System.arraycopy(vals, offset, act.el, 0, act.dim());
+	    return (true);
+	} else {
+	    // The values don't match ...
+	    return (false);
+	}
+    }
+
     // loadTarget -- Load the given vector of values into the target vector
     // for this layer.  Specifically, just direct the target reference for
     // this layer to the given vector, allocating no new storage.  This
@@ -186,6 +213,24 @@ public class Layer {
 	}
     }
 
+    // loadTarget -- Load the values starting at the given offset in the
+    // given array into the target vector for this layer.  The values are
+    // copied into storage kept by this layer, which is allocated only the
+    // first time.  Return false on error.
+    public boolean loadTarget(double[] vals, int offset) {
+	if (act.valid() && (vals != null) && (offset >= 0) &&
+	    (offset <= vals.length - act.dim())) {
+	    if (targStore == null)
+		targStore = new Vector(act.dim());
+	    System.arraycopy(vals, offset, targStore.el, 0, act.dim());
+	    targ = targStore;
+	    return (true);
+	} else {
+	    // The values don't match the layer ...
+	    return (false);
+	}
+    }
+
     // computeActivation -- Calculate the activation values of the units in
     // this layer based on their inputs and bias weights.
     public void computeActivation() {
@@ -268,279 +313,3 @@ public class Layer {
 
 }
 
-=======
-//
-// Layer
-//
-// This class implements a layer of processing units.
-//
-// David Noelle -- Tue Apr 24 15:51:19 PDT 2007
-//
-
-
-import java.util.*;
-
-
-public class Layer {
-
-    public int n;                         // number of units in the layer
-    public double min;                    // minimum activation level
-    public double max;                    // maximum activation level
-    public Vector net;                    // net input levels of units
-    public Vector act;                    // activation levels of units
-    public Vector targ;                   // current target for output layers
-    public Vector delta;                  // unit delta values
-    public Vector bias;                   // unit bias weights
-    public Vector biasDelta;              // bias weight delta values
-    public List<Projection> inputs;       // projections into this layer
-    public List<Projection> outputs;      // projections out of this layer
-
-    // Default constructor ...
-    public Layer() {
-	this.n = -1;
-	this.min = 0.0;
-	this.max = 1.0;
-	this.net = null;
-	this.act = null;
-	this.targ = null;
-	this.delta = null;
-	this.bias = null;
-	this.biasDelta = null;
-	this.inputs = new LinkedList<Projection>();
-	this.outputs = new LinkedList<Projection>();
-    }
-
-    // Constructor with size and activation range specified ...
-    public Layer(int size, double min, double max) {
-	if ((size > 0) && (min < max)) {
-	    this.n = size;
-	    this.min = min;
-	    this.max = max;
-	    this.net = new Vector(size);
-	    this.act = new Vector(size);
-	    this.targ = null;
-	    this.delta = new Vector(size);
-	    this.bias = new Vector(size);
-	    this.biasDelta = new Vector(size);
-	    this.inputs = new LinkedList<Projection>();
-	    this.outputs = new LinkedList<Projection>();
-	} else {
-	    this.n = -1;
-	    this.min = 0.0;
-	    this.max = 1.0;
-	    this.net = null;
-	    this.act = null;
-	    this.targ = null;
-	    this.delta = null;
-	    this.bias = null;
-	    this.biasDelta = null;
-	    this.inputs = new LinkedList<Projection>();
-	    this.outputs = new LinkedList<Projection>();
-	}
-    }
-
-    // Constructor with size specified ...
-    public Layer(int size) {
-	this(size, 0.0, 1.0);
-    }
-
-    // resize -- Change the size of this layer.  Activation and delta values
-    // may be lost in this process.  All input and output projections are
-    // discarded.
-    public void resize(int size) {
-	if (size > 0) {
-	    n = size;
-	    net = new Vector(size);
-	    act = new Vector(size);
-	    targ = null;
-	    delta = new Vector(size);
-	    bias = new Vector(size);
-	    biasDelta = new Vector(size);
-	    inputs = new LinkedList<Projection>();
-	    outputs = new LinkedList<Projection>();
-	} else {
-	    n = -1;
-	    net = null;
-	    act = null;
-	    targ = null;
-	    delta = null;
-	    bias = null;
-	    biasDelta = null;
-	    inputs = new LinkedList<Projection>();
-	    outputs = new LinkedList<Projection>();
-	}
-    }
-
-    // setActivationRange -- Change the minimum and maximum activation
-    // values for the units in this layer.
-    public void setActivationRange(double min, double max) {
-	if (min < max) {
-	    this.min = min;
-	    this.max = max;
-	}
-    }
-
-    // addInputProjection -- Add the given projection to the list of
-    // projections coming into this layer.
-    public void addInputProjection(Projection p) {
-	if (p.outputN == n) {
-	    inputs.add(p);
-	    p.output = this;
-	}
-    }
-
-    // addOutputProjection -- Add the given projection to the list of
-    // projections coming out of this layer.
-    public void addOutputProjection(Projection p) {
-	if (p.inputN == n) {
-	    outputs.add(p);
-	    p.input = this;
-	}
-    }
-
-    // clearNetInputs -- Set all net input values in the layer to zero.
-    public void clearNetInputs() {
-	for (int i = 0; i < net.dim(); i++)
-	    net.set(i, 0.0);
-    }
-
-    // clearActivation -- Set all activation values in the layer to zero.
-    public void clearActivation() {
-	for (int i = 0; i < act.dim(); i++)
-	    act.set(i, 0.0);
-    }
-
-    // clearUnitDeltas -- Set all unit delta values in the layer to zero.
-    public void clearUnitDeltas() {
-	for (int i = 0; i < delta.dim(); i++)
-	    delta.set(i, 0.0);
-    }
-
-    // clearBiasDeltas -- Set all bias weight deltas in the layer to zero.
-    public void clearBiasDeltas() {
-	for (int i = 0; i < biasDelta.dim(); i++)
-	    biasDelta.set(i, 0.0);
-    }
-
-    // randomizeBiases -- Set the bias weights to random values sampled
-    // uniformly from the given range.
-    public void randomizeBiases(double min, double max) {
-	bias.randomize(min, max);
-    }
-
-    // loadInput -- Load the given vector of values into the activation
-    // vector for this layer.  This allows this layer to act as an input
-    // layer.  Return false on error.
-    public boolean loadInput(Vector v) {
-	if (act.valid() && v.valid() && (act.dim() == v.dim())) {
-	    for (int i = 0; i < act.dim(); i++)
-		act.set(i, v.get(i));
-	    return (true);
-	} else {
-	    // The vectors don't match ...
-	    return (false);
-	}
-    }
-
-    // loadTarget -- Load the given vector of values into the target vector
-    // for this layer.  Specifically, just direct the target reference for
-    // this layer to the given vector, allocating no new storage.  This
-    // allows this layer to act as an output layer.  Return false on error.
-    public boolean loadTarget(Vector v) {
-	if (act.valid() && v.valid() && (act.dim() == v.dim())) {
-	    targ = v;
-	    return (true);
-	} else {
-	    // The vector doesn't match the layer ...
-	    return (false);
-	}
-    }
-
-    // computeActivation -- Calculate the activation values of the units in
-    // this layer based on their inputs and bias weights.
-    public void computeActivation() {
-	if (!(inputs.isEmpty())) {
-	    // This is not an input layer, so we can update it ...
-	    // Add in the bias values to the net inputs ...
-	    net = net.copy(bias);
-	    // Sum up the contributions of each projection ...
-	    for (Projection p : inputs)
-		net = net.sum(p.W.product(p.input.act));
-	    act = net.squash(min, max);
-	}
-    }
-
-    // computeOutputDelta -- Calculate the unit delta values for this
-    // output layer.
-    public void computeOutputDelta() {
-    	//this is hypotetically where the calculation is stored\
-    	//although its not supposed to take in any parameters
-
-    	//delta.outerProduct(v)= targ
-
-
-	// PLACE YOUR CODE HERE ...
-    	//the one below this is how this instance variable will be filled
-    	Vector diff = new Vector(n,0.0);
-    	Vector dirv = new Vector(n,0.0);
-    	diff = targ.difference(act);
-    	dirv = net.derivative(min,max);
-    	for(int i=0; i< n; i++){
-    		delta.set(i,diff.get(i*dirv.get(i)));
-    	}
-    	/*vSum = vSum.sum(v1);
-    	for (int i=0; i<vSum.n; i++){
-    	delta.set(i, n);
-    	} */
-
-    }
-
-    // computeHiddenDelta -- Calculate the unit delta values for this hidden
-    // layer.
-    public void computeHiddenDelta() {
-    	Vector diff = new Vector(n,0.0);
-    	Vector dirva = new Vector(n,0.0);
-    	diff = targ.difference(act);
-    	dirva = net.derivative(min,max);
-    	for (projection p: outputs){
-    		diff = diff.sum((p.W.transpose().product(p.output.delta)));
-    	}
-    	for(int i=0; i< n; i++){
-    		delta.set(i,diff.get(i*dirva.get(i)));
-    	}
-	// PLACE YOUR CODE HERE ...
-
-    }
-
-    // computeDelta -- Calculate the unit delta values for this layer.
-    public void computeDelta() {
-	if (outputs.isEmpty()) {
-	    // This is an output layer ...
-	    computeOutputDelta();
-	} else {
-	    // No point in computing unit delta values for input layers,
-	    // as those values are not used ...
-	    if (!(inputs.isEmpty())) {
-		// This is a hidden layer ...
-		computeHiddenDelta();
-	    }
-	}
-    }
-
-    // incrementBiasDeltas -- Update how much the bias weights should
-    // change, as a function of the current unit delta values.  Note that
-    // this increments the current bias weight delta values, allowing
-    // multiple weight changes to be "summed up".  Note also that these
-    // weight delta values are prior to the application of the learning rate.
-    public void incrementBiasDeltas() {
-	biasDelta = biasDelta.sum(delta);
-    }
-
-    // updateBiases -- Update the bias weights.
-    public void updateBiases(double learningRate) {
-	bias = bias.sum(biasDelta.multiplyByScalar(learningRate));
-    }
-
-
-}
->>>>>>> faa13164fea6dc3efcc4969cd368ae0b695afbd5
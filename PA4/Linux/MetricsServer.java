@@ -0,0 +1,207 @@
+//
+// MetricsServer
+//
+// This class serves the progress of a training run over HTTP, in the
+// Prometheus text format, so that a long run can be watched, or scraped
+// by a monitoring system, without following its output.  It listens only
+// on the loopback interface, at the path "/metrics".  Everything served
+// is read from the published values in TrainingMetrics, without taking
+// any lock, so answering a request never holds up training.  The values
+// served are:
+//
+//   pa4_epoch                       number of the last epoch completed
+//   pa4_sse                         training SSE of the last epoch
+//   pa4_sse_recent{ago="K"}         training SSE of the epoch K epochs
+//                                   before the last, for recent epochs
+//   pa4_patterns_total              patterns trained on
+//   pa4_patterns_per_second         throughput of the last epoch
+//   pa4_epoch_seconds               time taken by the last epoch
+//   pa4_phase_seconds_total{phase="P"}
+//                                   time spent in each training phase
+//   pa4_allocated_bytes_total       bytes allocated by training
+//   pa4_heap_used_bytes             heap in use
+//   pa4_heap_committed_bytes        heap committed by the JVM
+//   pa4_heap_max_bytes              largest the heap may grow
+//
+
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+
+public class MetricsServer {
+
+    static final int RECENT_EPOCHS = 20;   // epochs of SSE served
+
+    TrainingMetrics metrics;   // the values served
+    HttpServer server;         // answers requests, once started
+    ExecutorService handlers;  // thread answering requests
+
+    // Constructor with the metrics to serve specified ...
+    public MetricsServer(TrainingMetrics metrics) {
+	this.metrics = metrics;
+	this.server = null;
+	this.handlers = null;
+    }
+
+    // start -- Start serving on the given loopback port, or on any free
+    // port if it is zero.  Return false on error.
+    public boolean start(int port) {
+	try {
+	    InetSocketAddress address
+		= new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+	    server = HttpServer.create(address, 0);
+	} catch (IOException e) {
+	    return (false);
+	}
+	server.createContext("/metrics", new HttpHandler() {
+		public void handle(HttpExchange exchange)
+		    throws IOException {
+		    respond(exchange);
+		}
+	    });
+	// Answer requests on a daemon thread, so that the server never
+	// keeps a finished run from exiting ...
+	handlers = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+		    Thread t = new Thread(r, "MetricsServer");
+		    t.setDaemon(true);
+		    return (t);
+		}
+	    });
+	server.setExecutor(handlers);
+	server.start();
+	return (true);
+    }
+
+    // port -- Return the port being served, or -1 if not started.
+    public int port() {
+	if (server == null)
+	    return (-1);
+	return (server.getAddress().getPort());
+    }
+
+    // stop -- Stop serving.
+    public void stop() {
+	if (server != null) {
+	    server.stop(0);
+	    server = null;
+	}
+	if (handlers != null) {
+	    handlers.shutdownNow();
+	    handlers = null;
+	}
+    }
+
+    // respond -- Answer one request with the current values.
+    void respond(HttpExchange exchange) throws IOException {
+	try {
+	    if (!(exchange.getRequestMethod().equals("GET") ||
+		  exchange.getRequestMethod().equals("HEAD"))) {
+		exchange.sendResponseHeaders(405, -1);
+		return;
+	    }
+	    byte[] body = format().getBytes("UTF-8");
+	    exchange.getResponseHeaders().set("Content-Type",
+					      "text/plain; version=0.0.4; "
+					      + "charset=utf-8");
+	    if (exchange.getRequestMethod().equals("HEAD")) {
+		exchange.sendResponseHeaders(200, -1);
+		return;
+	    }
+	    exchange.sendResponseHeaders(200, body.length);
+	    exchange.getResponseBody().write(body);
+	} finally {
+	    exchange.close();
+	}
+    }
+
+    // format -- Return the current values in the Prometheus text format.
+    String format() {
+	StringBuilder buf = new StringBuilder();
+	int epoch = metrics.epochs();
+	appendMetric(buf, "pa4_epoch", "gauge",
+		     "Number of the last training epoch completed.", epoch);
+	appendMetric(buf, "pa4_sse", "gauge",
+		     "Training SSE of the last epoch.", metrics.sse());
+	appendHeader(buf, "pa4_sse_recent", "gauge",
+		     "Training SSE of recent epochs.");
+	for (int ago = 0; (ago < RECENT_EPOCHS) && (ago < epoch); ago++) {
+	    double sse = metrics.sse(epoch - ago);
+	    if (!(Double.isNaN(sse)))
+		appendSample(buf, "pa4_sse_recent{ago=\"" + ago + "\"}", sse);
+	}
+	appendMetric(buf, "pa4_patterns_total", "counter",
+		     "Training patterns processed.", metrics.patterns());
+	double seconds = metrics.lastEpochSeconds();
+	appendMetric(buf, "pa4_patterns_per_second", "gauge",
+		     "Training patterns processed per second in the last "
+		     + "epoch.",
+		     (seconds > 0.0) ? metrics.lastEpochPatterns() / seconds
+		     : 0.0);
+	appendMetric(buf, "pa4_epoch_seconds", "gauge",
+		     "Time taken by the last training epoch.", seconds);
+	appendHeader(buf, "pa4_phase_seconds_total", "counter",
+		     "Time spent in each phase of training.");
+	appendSample(buf, "pa4_phase_seconds_total{phase=\"forward\"}",
+		     metrics.forwardSeconds());
+	appendSample(buf, "pa4_phase_seconds_total{phase=\"backward\"}",
+		     metrics.backwardSeconds());
+	appendSample(buf, "pa4_phase_seconds_total{phase=\"delta\"}",
+		     metrics.deltaSeconds());
+	appendSample(buf, "pa4_phase_seconds_total{phase=\"update\"}",
+		     metrics.updateSeconds());
+	appendSample(buf, "pa4_phase_seconds_total{phase=\"epoch\"}",
+		     metrics.epochSeconds());
+	if (metrics.allocatedBytes() >= 0)
+	    appendMetric(buf, "pa4_allocated_bytes_total", "counter",
+			 "Bytes allocated by the training thread.",
+			 metrics.allocatedBytes());
+	MemoryUsage heap
+	    = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+	appendMetric(buf, "pa4_heap_used_bytes", "gauge",
+		     "Heap in use.", heap.getUsed());
+	appendMetric(buf, "pa4_heap_committed_bytes", "gauge",
+		     "Heap committed by the JVM.", heap.getCommitted());
+	if (heap.getMax() >= 0)
+	    appendMetric(buf, "pa4_heap_max_bytes", "gauge",
+			 "Largest the heap may grow.", heap.getMax());
+	return (buf.toString());
+    }
+
+    // appendHeader -- Append the help and type lines of a metric.
+    static void appendHeader(StringBuilder buf, String name, String type,
+			     String help) {
+	buf.append("# HELP ").append(name).append(' ').append(help)
+	    .append('\n');
+	buf.append("# TYPE ").append(name).append(' ').append(type)
+	    .append('\n');
+    }
+
+    // appendSample -- Append one sample of a metric, with the given name
+    // and any labels.
+    static void appendSample(StringBuilder buf, String name, double val) {
+	buf.append(name).append(' ');
+	if (Double.isNaN(val))
+	    buf.append("NaN");
+	else if (Double.isInfinite(val))
+	    buf.append((val > 0.0) ? "+Inf" : "-Inf");
+	else if ((val == Math.rint(val)) && (Math.abs(val) < 1.0e15))
+	    buf.append((long) val);
+	else
+	    buf.append(val);
+	buf.append('\n');
+    }
+
+    // appendMetric -- Append a metric with a single sample.
+    static void appendMetric(StringBuilder buf, String name, String type,
+			     String help, double val) {
+	appendHeader(buf, name, type, help);
+	appendSample(buf, name, val);
+    }
+
+
+}
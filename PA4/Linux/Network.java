@@ -20,6 +20,21 @@ public class Network {
 	layers = new LinkedList<Layer>();
     }
 
+    // Copy constructor.  The copy has layers and projections of the same
+    // sizes, connected in the same way, with the same weight values ...
+    public Network(Network net) {
+	this();
+	List<Layer> oldLayers = new ArrayList<Layer>(net.layers);
+	List<Layer> newLayers = new ArrayList<Layer>();
+	for (Layer lay : oldLayers)
+	    newLayers.add(createLayer(lay.n, lay.min, lay.max));
+	for (int l = 0; l < oldLayers.size(); l++)
+	    for (Projection p : oldLayers.get(l).inputs)
+		createProjection(newLayers.get(oldLayers.indexOf(p.input)),
+				 newLayers.get(l));
+	copyWeights(net);
+    }
+
     // createLayer -- Create a new layer of the given size and add it to
     // the end of the cascade of layers.  In other words, layers must be
     // created in the order of activation flow.  Return the layer, or null
@@ -114,19 +129,108 @@ public class Network {
     // randomizeWeights -- Randomize all weights, including bias weights,
     // sampling new values uniformly from the specified range.
     public void randomizeWeights(double min, double max) {
+	randomizeWeights(min, max, new Random());
+    }
+
+    // randomizeWeights -- Randomize all weights, including bias weights,
+    // sampling new values uniformly from the specified range using the
+    // given random number generator.
+    public void randomizeWeights(double min, double max, Random generator) {
+	for (Layer lay : layers) {
+	    lay.randomizeBiases(min, max, generator);
+	    for (Projection p : lay.inputs) {
+		p.randomizeWeights(min, max, generator);
+	    }
+	}
+    }
+
+    // copyWeights -- Copy all weights, including bias weights, from the
+    // given network, which must have the same topology as this one, into
+    // this network's existing storage.  Return false on error.
+    public boolean copyWeights(Network net) {
+	if (net.layers.size() != layers.size())
+	    return (false);
+	Iterator<Layer> from = net.layers.iterator();
 	for (Layer lay : layers) {
-	    lay.randomizeBiases(min, max);
+	    Layer src = from.next();
+	    if ((src.n != lay.n) || (src.inputs.size() != lay.inputs.size()))
+		return (false);
+	    System.arraycopy(src.bias.el, 0, lay.bias.el, 0, lay.n);
+	    Iterator<Projection> fromP = src.inputs.iterator();
 	    for (Projection p : lay.inputs) {
-		p.randomizeWeights(min, max);
+		Projection srcP = fromP.next();
+		if ((srcP.inputN != p.inputN) || (srcP.outputN != p.outputN))
+		    return (false);
+		for (int i = 0; i < p.outputN; i++)
+		    System.arraycopy(srcP.W.el[i], 0, p.W.el[i], 0, p.inputN);
 	    }
 	}
+	return (true);
+    }
+
+    // copyWeightDeltas -- Copy all weight delta values, including those
+    // for bias weights, from the given network, which must have the same
+    // topology as this one.  Return false on error.
+    public boolean copyWeightDeltas(Network net) {
+	if (net.layers.size() != layers.size())
+	    return (false);
+	Iterator<Layer> from = net.layers.iterator();
+	for (Layer lay : layers) {
+	    Layer src = from.next();
+	    if ((src.n != lay.n) || (src.inputs.size() != lay.inputs.size()))
+		return (false);
+	    System.arraycopy(src.biasDelta.el, 0, lay.biasDelta.el, 0, lay.n);
+	    Iterator<Projection> fromP = src.inputs.iterator();
+	    for (Projection p : lay.inputs) {
+		Projection srcP = fromP.next();
+		if ((srcP.inputN != p.inputN) || (srcP.outputN != p.outputN))
+		    return (false);
+		for (int i = 0; i < p.outputN; i++)
+		    System.arraycopy(srcP.deltaW.el[i], 0, 
+				     p.deltaW.el[i], 0, p.inputN);
+	    }
+	}
+	return (true);
+    }
+
+    // estimateCosts -- Return estimates of the heap held by, and the
+    // arithmetic done by, each layer and projection in the network, in
+    // order of activation flow, with each layer followed by the
+    // projections into it (see CostModel).
+    public List<CostModel.Estimate> estimateCosts() {
+	return (CostModel.estimate(this));
+    }
+
+    // totalCost -- Return estimates of the heap held by, and the
+    // arithmetic done by, the network as a whole.
+    public CostModel.Estimate totalCost() {
+	return (CostModel.total(this));
+    }
+
+    // calibrateFlopSeconds -- Train a copy of this network briefly on
+    // random patterns, leaving this network unchanged, and return the
+    // time taken per floating point operation, in seconds.  Return a
+    // negative value on error.
+    public double calibrateFlopSeconds() {
+	return (CostModel.calibrate(this));
+    }
+
+    // predictEpochSeconds -- Return the predicted time, in seconds, of a
+    // training epoch over the given number of patterns, given the time
+    // taken per floating point operation.
+    public double predictEpochSeconds(long numPats, double secondsPerFlop) {
+	return (totalCost().epochFlops(numPats) * secondsPerFlop);
     }
 
     // readWeights -- Read weights from the given file.  Read bias weights
     // first, in the same order in which layers are stored in the Network
     // object.  Then read projection weight matrices in the order of inputs
-    // to the layers.  Return false on error.
+    // to the layers.  Files in the binary format written by
+    // "writeWeightsBinary" are recognized and read as such.  Return false
+    // on error.
     public boolean readWeights(String wtsFilename) {
+	if (WeightFile.isWeightFile(wtsFilename))
+	    return (readWeightsBinary(wtsFilename));
 	try {
 	    File wtsFile = new File(wtsFilename);
 	    if (wtsFile.exists() && wtsFile.canRead()) {
@@ -188,6 +292,22 @@ public class Network {
 	}
     }
 
+    // readWeightsBinary -- Read weights from the given file, which should be
+    // in the binary format written by "writeWeightsBinary".  The file must
+    // describe a network with the same topology as this one.  Return false
+    // on error.
+    public boolean readWeightsBinary(String wtsFilename) {
+	return (WeightFile.read(this, wtsFilename));
+    }
+
+    // writeWeightsBinary -- Write weights to the given file in a binary
+    // format that records the network topology, preserves every weight
+    // exactly, and ends in a checksum.  Any existing file is replaced.
+    // Return false on error.
+    public boolean writeWeightsBinary(String wtsFilename) {
+	return (WeightFile.write(this, wtsFilename));
+    }
+
 
 }
 
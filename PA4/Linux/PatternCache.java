@@ -0,0 +1,162 @@
+//
+// PatternCache
+//
+// This class keeps track of pattern sets that have already been read, so
+// that the same file is parsed only once.  Within a process, sets are
+// remembered by file path, and a set read from an unchanged file is
+// shared rather than read again.  Only the MAX_ENTRIES most recently used
+// sets are remembered, and only through soft references, so that the
+// garbage collector may reclaim a set that is no longer in use when
+// memory runs short.  Across processes, a binary "sidecar"
+// copy of each text pattern file is written next to it, recording the
+// size and modification time of the file it came from, so that later
+// runs can skip text parsing entirely while the file is unchanged.
+// Pattern sets returned by the cache are shared, and they must not be
+// modified.
+//
+
+
+import java.io.*;
+import java.lang.ref.*;
+import java.util.*;
+
+
+public class PatternCache {
+
+    public static final String SIDECAR_SUFFIX = ".pcache";
+    static final int MAX_ENTRIES = 8;      // pattern sets remembered
+
+    // Entry -- A remembered pattern set, along with the size and
+    // modification time of the file from which it was read.
+    static class Entry {
+	long size;
+	long modified;
+	SoftReference<PatternSet> pats;
+
+	Entry(long size, long modified, PatternSet pats) {
+	    this.size = size;
+	    this.modified = modified;
+	    this.pats = new SoftReference<PatternSet>(pats);
+	}
+    }
+
+    // Remembered sets, by path, least recently used first.  This is only
+    // touched while holding the lock on this class ...
+    static final Map<String, Entry> loaded
+	= new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+	    protected boolean removeEldestEntry
+		(Map.Entry<String, PatternCache.Entry> e) {
+		return (size() > MAX_ENTRIES);
+	    }
+	};
+
+    // load -- Return the pattern set stored in the given file, reading it
+    // only if it has not already been read or has changed since it was
+    // read.  Return null on error.
+    public static synchronized PatternSet load(String patsFilename) {
+	try {
+	    File patsFile = new File(patsFilename);
+	    if (!(patsFile.exists() && patsFile.canRead()))
+		return (null);
+	    String path = patsFile.getCanonicalPath();
+	    long size = patsFile.length();
+	    long modified = patsFile.lastModified();
+	    // Look for a set already read by this process ...
+	    Entry entry = loaded.get(path);
+	    if ((entry != null) &&
+		(entry.size == size) && (entry.modified == modified)) {
+		PatternSet pats = entry.pats.get();
+		if (pats != null)
+		    return (pats);
+	    }
+	    // Look for an up-to-date binary sidecar file ...
+	    File sidecar = new File(path + SIDECAR_SUFFIX);
+	    PatternSet pats = readSidecar(sidecar, size, modified);
+	    if (pats == null) {
+		// Parse the file itself, noting its format as it is read ...
+		pats = new PatternSet();
+		boolean binary;
+		BufferedInputStream patsIn = PatternInput.open(patsFile);
+		try {
+		    binary = PatternSet.isBinary(patsIn);
+		    if (!(binary ? pats.readBinary(new DataInputStream(patsIn))
+			  : pats.readText(patsIn)))
+			return (null);
+		} finally {
+		    patsIn.close();
+		}
+		// Files that are already in the binary format need no
+		// sidecar ...
+		if (!(binary))
+		    writeSidecar(sidecar, size, modified, pats);
+	    }
+	    loaded.put(path, new Entry(size, modified, pats));
+	    return (pats);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (null);
+	}
+    }
+
+    // clear -- Forget all of the pattern sets read by this process.
+    public static synchronized void clear() {
+	loaded.clear();
+    }
+
+    // readSidecar -- Read a pattern set from the given sidecar file, as long
+    // as the sidecar was made from a file of the given size and modification
+    // time.  Return null if there is no such sidecar or it cannot be read.
+    static PatternSet readSidecar(File sidecar, long size, long modified) {
+	if (!(sidecar.exists() && sidecar.canRead()))
+	    return (null);
+	try {
+	    DataInputStream in
+		= new DataInputStream(new BufferedInputStream
+				      (new FileInputStream(sidecar)));
+	    try {
+		if ((in.readLong() != size) || (in.readLong() != modified))
+		    return (null);
+		PatternSet pats = new PatternSet();
+		if (pats.readBinary(in))
+		    return (pats);
+		else
+		    return (null);
+	    } finally {
+		in.close();
+	    }
+	} catch (IOException e) {
+	    // The sidecar is damaged, so ignore it ...
+	    return (null);
+	}
+    }
+
+    // writeSidecar -- Write the given pattern set, read from a text pattern
+    // file of the given size and modification time, to the given sidecar
+    // file, recording that size and time.  The sidecar is written under a
+    // temporary name and then renamed, so that a partially written sidecar
+    // is never used.  Failure to write the sidecar is not an error, as it
+    // only costs speed.
+    static void writeSidecar(File sidecar, long size, long modified,
+			     PatternSet pats) {
+	File temp = new File(sidecar.getPath() + ".tmp");
+	try {
+	    DataOutputStream out
+		= new DataOutputStream(new BufferedOutputStream
+				       (new FileOutputStream(temp)));
+	    try {
+		out.writeLong(size);
+		out.writeLong(modified);
+		pats.writeBinary(out);
+	    } finally {
+		out.close();
+	    }
+	    if (!(temp.renameTo(sidecar)))
+		temp.delete();
+	} catch (IOException e) {
+	    // The directory may not be writable, so do without ...
+	    temp.delete();
+	}
+    }
+
+
+}
@@ -0,0 +1,232 @@
+//
+// PatternGenerator
+//
+// This class writes pattern files of any size for performance work, in
+// either the text or the binary format read by PatternSet.readPatterns
+// and PatternStream, compressed with gzip if the file name ends in ".gz".
+// Patterns are generated and written one at a time, so the size of the
+// file is limited only by the disk.  The same seed always produces the
+// same file.  The tasks are:
+//
+//   parity    random binary inputs, with each output being the parity of
+//             every input whose index, modulo the number of outputs, is
+//             the output's index (two inputs and one output is XOR)
+//   teacher   random inputs between zero and one, with the outputs of a
+//             random "teacher" network, with one hidden layer, as targets
+//   sparse    sparse random binary inputs, in which each input is one
+//             with a given probability, with the outputs of a random
+//             teacher network as targets
+//
+// Options may be given on the command line, after the required arguments:
+//
+//   -binary       write the binary format, rather than text
+//   -seed S       seed for the random number generator (default 1)
+//   -hidden H     hidden units in the teacher network (default 16)
+//   -density D    probability of each sparse input being one (default 0.05)
+//
+
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+
+public class PatternGenerator {
+
+    public static final int PARITY = 0;
+    public static final int TEACHER = 1;
+    public static final int SPARSE = 2;
+    static final int BUFFER_SIZE = 1 << 16;    // bytes buffered at a time
+
+    int task;                  // PARITY, TEACHER, or SPARSE
+    int inputN;                // dimensionality of input vectors
+    int outputN;               // dimensionality of output vectors
+    int hiddenN;               // hidden units in the teacher network
+    double density;            // probability of a sparse input being one
+    Random generator;          // source of random patterns
+    InferenceModel teacher;    // the teacher network, if any
+    double[] scratch;          // activation values for the teacher
+
+    // Constructor with the task, vector sizes, teacher size, sparse input
+    // density, and seed specified ...
+    public PatternGenerator(int task, int inputN, int outputN, int hiddenN,
+			    double density, long seed) {
+	this.task = task;
+	this.inputN = inputN;
+	this.outputN = outputN;
+	this.hiddenN = hiddenN;
+	this.density = density;
+	this.generator = new Random(seed);
+	this.teacher = null;
+	this.scratch = null;
+	if (task != PARITY) {
+	    // Wire up a random teacher network ...
+	    Network net = new Network();
+	    Layer in = net.createLayer(inputN);
+	    Layer hidden = net.createLayer(hiddenN);
+	    Layer out = net.createLayer(outputN);
+	    net.createProjection(in, hidden);
+	    net.createProjection(hidden, out);
+	    net.randomizeWeights(-4.0, 4.0, generator);
+	    this.teacher = new InferenceModel(net);
+	    this.scratch = teacher.newScratch();
+	}
+    }
+
+    // parseTask -- Return the task with the given name ("parity",
+    // "teacher", or "sparse"), or a negative value if there is no such
+    // task.
+    public static int parseTask(String name) {
+	if (name.equalsIgnoreCase("parity"))
+	    return (PARITY);
+	if (name.equalsIgnoreCase("teacher"))
+	    return (TEACHER);
+	if (name.equalsIgnoreCase("sparse"))
+	    return (SPARSE);
+	return (-1);
+    }
+
+    // nextPattern -- Fill the given arrays with the next pattern's input
+    // and target vectors.
+    public void nextPattern(double[] input, double[] target) {
+	if (task == PARITY) {
+	    Arrays.fill(target, 0, outputN, 0.0);
+	    for (int i = 0; i < inputN; i++) {
+		input[i] = generator.nextBoolean() ? 1.0 : 0.0;
+		if (input[i] != 0.0)
+		    target[i % outputN] = 1.0 - target[i % outputN];
+	    }
+	} else {
+	    for (int i = 0; i < inputN; i++) {
+		if (task == SPARSE)
+		    input[i] = (generator.nextDouble() < density) ? 1.0 : 0.0;
+		else
+		    input[i] = generator.nextDouble();
+	    }
+	    teacher.predict(input, 0, target, 0, scratch);
+	}
+    }
+
+    // write -- Write the given number of patterns to the given file, in
+    // the binary format if requested, and in the text format otherwise.
+    // Return false on error.
+    public boolean write(String patsFilename, long numPats, boolean binary) {
+	double[] input = new double[inputN];
+	double[] target = new double[outputN];
+	try {
+	    OutputStream str = new FileOutputStream(patsFilename);
+	    if (patsFilename.endsWith(".gz"))
+		str = new GZIPOutputStream(str, BUFFER_SIZE);
+	    str = new BufferedOutputStream(str, BUFFER_SIZE);
+	    try {
+		if (binary) {
+		    DataOutputStream out = new DataOutputStream(str);
+		    out.writeInt(PatternSet.MAGIC);
+		    out.writeLong(numPats);
+		    out.writeInt(inputN);
+		    out.writeInt(outputN);
+		    for (long pat = 0; pat < numPats; pat++) {
+			nextPattern(input, target);
+			for (int i = 0; i < inputN; i++)
+			    out.writeDouble(input[i]);
+			for (int i = 0; i < outputN; i++)
+			    out.writeDouble(target[i]);
+		    }
+		    out.flush();
+		} else {
+		    Writer out = new OutputStreamWriter(str);
+		    StringBuilder line = new StringBuilder();
+		    line.append(numPats).append(' ').append(inputN)
+			.append(' ').append(outputN).append('\n');
+		    out.append(line);
+		    for (long pat = 0; pat < numPats; pat++) {
+			nextPattern(input, target);
+			line.setLength(0);
+			appendValues(line, input, inputN);
+			line.append(' ');
+			appendValues(line, target, outputN);
+			line.append('\n');
+			out.append(line);
+		    }
+		    out.flush();
+		}
+	    } finally {
+		str.close();
+	    }
+	    // Success!
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	}
+    }
+
+    // appendValues -- Append the given number of values, separated by
+    // single spaces, writing zero and one as single digits and anything
+    // else with just enough digits to be read back exactly.
+    static void appendValues(StringBuilder buf, double[] vals, int n) {
+	for (int i = 0; i < n; i++) {
+	    if (i > 0)
+		buf.append(' ');
+	    if (vals[i] == 0.0)
+		buf.append('0');
+	    else if (vals[i] == 1.0)
+		buf.append('1');
+	    else
+		buf.append(vals[i]);
+	}
+    }
+
+    // main -- Generate a pattern file.
+    public static void main(String[] args) {
+	if (args.length < 5) {
+	    System.err.println("Usage:  java PatternGenerator FILE "
+			       + "parity|teacher|sparse PATTERNS INPUTS "
+			       + "OUTPUTS [OPTIONS]");
+	    return;
+	}
+	int task = parseTask(args[1]);
+	long numPats = Long.parseLong(args[2]);
+	int inputN = Integer.parseInt(args[3]);
+	int outputN = Integer.parseInt(args[4]);
+	if ((task < 0) || (numPats < 0) || (inputN < 1) || (outputN < 1)) {
+	    System.err.println("Invalid task or pattern set size.");
+	    return;
+	}
+	boolean binary = false;
+	long seed = 1;
+	int hiddenN = 16;
+	double density = 0.05;
+	for (int a = 5; a < args.length; a++) {
+	    if (args[a].equals("-binary")) {
+		binary = true;
+	    } else if (args[a].equals("-seed") && (a + 1 < args.length)) {
+		seed = Long.parseLong(args[++a]);
+	    } else if (args[a].equals("-hidden") && (a + 1 < args.length)) {
+		hiddenN = Integer.parseInt(args[++a]);
+	    } else if (args[a].equals("-density") && (a + 1 < args.length)) {
+		density = Double.parseDouble(args[++a]);
+	    } else {
+		System.err.println("Unknown option: " + args[a]);
+		return;
+	    }
+	}
+	if (hiddenN < 1) {
+	    System.err.println("Invalid number of hidden units.");
+	    return;
+	}
+	PatternGenerator gen = new PatternGenerator(task, inputN, outputN,
+						    hiddenN, density, seed);
+	long start = System.nanoTime();
+	if (!(gen.write(args[0], numPats, binary))) {
+	    System.err.println("Unable to write pattern file.");
+	    return;
+	}
+	double seconds = (System.nanoTime() - start) / 1.0e9;
+	System.out.println(String.format("Wrote %d patterns in %.3f seconds "
+					 + "(%.1f patterns/s).",
+					 numPats, seconds, numPats / seconds));
+    }
+
+
+}
@@ -1,7 +1,9 @@
 //
 // PatternSet
 //
-// This class implements a collection of input-output patterns.
+// This class implements a collection of input-output patterns.  The
+// patterns are stored in two contiguous arrays, one holding all of the
+// input vectors and the other holding all of the target vectors.
 //
 // David Noelle -- Tue Apr 24 15:51:19 PDT 2007
 //
@@ -13,71 +15,170 @@ import java.util.*;
 
 public class PatternSet {
 
+    public static final int MAGIC = 0x50415453;  // binary file tag, "PATS"
+
     public int inputN;              // dimensionality of input vectors
     public int outputN;             // dimensionality of output vectors
-    public List<Pattern> patterns;  // list of input-output patterns
+    int numPats;                    // number of patterns in the set
+    double[] inputs;                // input vectors, stored back to back
+    double[] targets;               // target vectors, stored back to back
+
+    static final int READ_CHUNK = 4096;  // patterns allocated at a time
 
     // Default constructor ...
     public PatternSet() {
 	this.inputN = 0;
 	this.outputN = 0;
-	this.patterns = new LinkedList<Pattern>();
+	this.numPats = 0;
+	this.inputs = new double[0];
+	this.targets = new double[0];
+    }
+
+    // Constructor with dimensionality and capacity specified.  The set
+    // starts out empty, but room is allocated for the given number of
+    // patterns, if that many fit ...
+    public PatternSet(int inputN, int outputN, int capacity) {
+	this.inputN = inputN;
+	this.outputN = outputN;
+	this.numPats = 0;
+	if (!(fits(capacity, inputN, outputN)))
+	    capacity = 0;
+	this.inputs = new double[inputN * capacity];
+	this.targets = new double[outputN * capacity];
     }
 
     // Copy constructor ...
     public PatternSet(PatternSet ps) {
 	this.inputN = ps.inputN;
 	this.outputN = ps.outputN;
-	this.patterns = new LinkedList<Pattern>();
-	for (Pattern p : ps.patterns) {
-	    Pattern newPat = new Pattern(p);
-	    this.patterns.add(newPat);
-	}
+	this.numPats = ps.numPats;
+	this.inputs = Arrays.copyOf(ps.inputs, ps.numPats * ps.inputN);
+	this.targets = Arrays.copyOf(ps.targets, ps.numPats * ps.outputN);
     }
 
     // numPatterns -- Return the number of patterns in the pattern set.
     public int numPatterns() {
-	return (patterns.size());
+	return (numPats);
+    }
+
+    // capacity -- Return the number of patterns that the pattern set can
+    // hold without allocating new storage.
+    public int capacity() {
+	if (inputN > 0)
+	    return (inputs.length / inputN);
+	else
+	    return (0);
+    }
+
+    // clear -- Remove all patterns from the pattern set, keeping the
+    // allocated storage for reuse.
+    public void clear() {
+	numPats = 0;
+    }
+
+    // getPattern -- Copy the pattern at the given index (zero-indexed) into
+    // the given Pattern object, resizing its vectors only if necessary.
+    // This allows a single Pattern to be reused as a view onto each of the
+    // patterns in turn.  Return false on error.
+    public boolean getPattern(int i, Pattern pat) {
+	if ((i < 0) || (i >= numPats))
+	    return (false);
+	if (pat.input.n != inputN)
+	    pat.input = new Vector(inputN);
+	if (pat.target.n != outputN)
+	    pat.target = new Vector(outputN);
+	System.arraycopy(inputs, i * inputN, pat.input.el, 0, inputN);
+	System.arraycopy(targets, i * outputN, pat.target.el, 0, outputN);
+	return (true);
+    }
+
+    // getPattern -- Return a freshly allocated copy of the pattern at the
+    // given index (zero-indexed), or null on error.
+    public Pattern getPattern(int i) {
+	Pattern pat = new Pattern(inputN, outputN);
+	if (getPattern(i, pat))
+	    return (pat);
+	else
+	    return (null);
+    }
+
+    // addPattern -- Append a copy of the given pattern to the end of the
+    // pattern set, growing the storage as needed.  Return false on error.
+    public boolean addPattern(Pattern pat) {
+	if ((pat.input.n != inputN) || (pat.target.n != outputN))
+	    return (false);
+	if (!(ensureCapacity(numPats + 1)))
+	    return (false);
+	System.arraycopy(pat.input.el, 0, inputs, numPats * inputN, inputN);
+	System.arraycopy(pat.target.el, 0, targets, numPats * outputN, outputN);
+	numPats = numPats + 1;
+	return (true);
+    }
+
+    // ensureCapacity -- Make sure that there is room for at least the given
+    // number of patterns, doubling the size of the storage when it must
+    // grow, but never past the largest number of patterns that fit in an
+    // array.  Return false if there cannot be room enough.
+    public boolean ensureCapacity(int minCapacity) {
+	int cap = capacity();
+	if (minCapacity > cap) {
+	    if (!(fits(minCapacity, inputN, outputN)))
+		return (false);
+	    long newCap = Math.max((long) minCapacity, 2L * cap);
+	    newCap = Math.min(newCap, Integer.MAX_VALUE
+			      / Math.max(Math.max(inputN, outputN), 1));
+	    inputs = Arrays.copyOf(inputs, (int) newCap * inputN);
+	    targets = Arrays.copyOf(targets, (int) newCap * outputN);
+	}
+	return (true);
+    }
+
+    // reserve -- Make room for the pattern with the given index while
+    // reading a pattern set whose header claims the given number of
+    // patterns.  Storage is doubled as the patterns arrive, rather than
+    // allocated from the header, but never past the claimed number, so that
+    // a damaged header cannot demand more memory than the file holds.
+    void reserve(int pat, long claimed) {
+	int cap = capacity();
+	if (pat >= cap) {
+	    long newCap = Math.min(Math.max(2L * cap, READ_CHUNK), claimed);
+	    inputs = Arrays.copyOf(inputs, (int) newCap * inputN);
+	    targets = Arrays.copyOf(targets, (int) newCap * outputN);
+	}
+    }
+
+    // fits -- Return true if the given number of patterns, of the given
+    // dimensionality, can be stored, with the input values and the target
+    // values each taking no more than the largest array size.
+    static boolean fits(long numPats, int inputN, int outputN) {
+	return ((numPats >= 0) &&
+		(numPats * inputN <= Integer.MAX_VALUE) &&
+		(numPats * outputN <= Integer.MAX_VALUE));
     }
 
     // readPatterns -- Read a pattern set from the given file.  The first
     // entry in this file should be a number of patterns.  The next should
     // be the number of inputs per pattern.  This should be followed by 
     // the number outputs per pattern.  The remaining values should be
-    // real numbers composing the patterns, themselves.  Return false on
-    // error.
+    // real numbers composing the patterns, themselves.  Values are read
+    // directly into the pattern storage, without intermediate copies.
+    // Files in the binary format written by "writeBinaryPatterns" are
+    // recognized by their leading magic number and read without any text
+    // parsing.  Files in either format may be gzip compressed.  Return
+    // false on error.
     public boolean readPatterns(String patsFilename) {
 	try {
 	    File patsFile = new File(patsFilename);
 	    if (patsFile.exists() && patsFile.canRead()) {
-		// Set up Scanner object ...
-		FileInputStream patsFileIn = new FileInputStream(patsFile);
-		InputStreamReader patsISReader 
-		    = new InputStreamReader(patsFileIn);
-		BufferedReader patsBufferedReader 
-		    = new BufferedReader(patsISReader);
-		Scanner patsScanner = new Scanner(patsBufferedReader);
-		// Read pattern set parameters ...
-		if (!(patsScanner.hasNextInt()))
-		    return (false);
-		int numPats = patsScanner.nextInt();
-		if (!(patsScanner.hasNextInt()))
-		    return (false);
-		inputN = patsScanner.nextInt();
-		if (!(patsScanner.hasNextInt()))
-		    return (false);
-		outputN = patsScanner.nextInt();
-		// Read the patterns into a matrix ...
-		Matrix patsM = new Matrix(numPats, (inputN + outputN));
-		if (!(patsM.read(patsScanner)))
-		    return (false);
-		// Translate the matrix into Pattern objects ...
-		for (int pat = 0; pat < numPats; pat++) {
-		    patterns.add(new Pattern(inputN, outputN, 
-					     patsM.extractRow(pat)));
+		BufferedInputStream patsIn = PatternInput.open(patsFile);
+		try {
+		    if (isBinary(patsIn))
+			return (readBinary(new DataInputStream(patsIn)));
+		    else
+			return (readText(patsIn));
+		} finally {
+		    patsIn.close();
 		}
-		// Success!
-		return (true);
 	    } else {
 		// The file cannot be read ...
 		return (false);
@@ -88,6 +189,121 @@ public class PatternSet {
 	}
     }
 
+    // readText -- Read a pattern set in the text format described above
+    // from the given stream.  Return false on error.
+    boolean readText(InputStream patsIn) {
+	// Set up Scanner object ...
+	InputStreamReader patsISReader = new InputStreamReader(patsIn);
+	BufferedReader patsBufferedReader = new BufferedReader(patsISReader);
+	Scanner patsScanner = new Scanner(patsBufferedReader);
+	// Read pattern set parameters ...
+	if (!(patsScanner.hasNextInt()))
+	    return (false);
+	int numPats = patsScanner.nextInt();
+	if (!(patsScanner.hasNextInt()))
+	    return (false);
+	inputN = patsScanner.nextInt();
+	if (!(patsScanner.hasNextInt()))
+	    return (false);
+	outputN = patsScanner.nextInt();
+	if ((numPats < 0) || (inputN < 1) || (outputN < 1) ||
+	    (!(fits(numPats, inputN, outputN))))
+	    return (false);
+	// Read the patterns straight into contiguous storage ...
+	this.numPats = 0;
+	this.inputs = new double[0];
+	this.targets = new double[0];
+	patsScanner.useDelimiter("[\\s]+");
+	for (int pat = 0; pat < numPats; pat++) {
+	    reserve(pat, numPats);
+	    for (int i = 0; i < inputN; i++) {
+		if (!(patsScanner.hasNextDouble()))
+		    return (false);
+		inputs[pat * inputN + i] = patsScanner.nextDouble();
+	    }
+	    for (int i = 0; i < outputN; i++) {
+		if (!(patsScanner.hasNextDouble()))
+		    return (false);
+		targets[pat * outputN + i] = patsScanner.nextDouble();
+	    }
+	}
+	this.numPats = numPats;
+	// Success!
+	return (true);
+    }
 
-}
+    // isBinary -- Return true if the given stream begins with the magic
+    // number of the binary pattern file format.  The stream is left
+    // positioned where it was.
+    static boolean isBinary(BufferedInputStream in) throws IOException {
+	return (PatternInput.peekMagic(in) == MAGIC);
+    }
+
+    // readBinary -- Read a pattern set in the binary format from the given
+    // stream.  The format consists of the magic number, the number of
+    // patterns (as a long), the number of inputs, and the number of
+    // outputs, followed by each pattern's input and target values in turn,
+    // as big-endian doubles.  Return false on error.  The storage grows as
+    // the patterns are read, so a header claiming more patterns than the
+    // stream holds ends in an EOFException, not an OutOfMemoryError.
+    boolean readBinary(DataInputStream in) throws IOException {
+	if (in.readInt() != MAGIC)
+	    return (false);
+	long numPats = in.readLong();
+	inputN = in.readInt();
+	outputN = in.readInt();
+	if ((numPats < 0) || (inputN < 1) || (outputN < 1) ||
+	    (!(fits(numPats, inputN, outputN))))
+	    return (false);
+	this.numPats = 0;
+	this.inputs = new double[0];
+	this.targets = new double[0];
+	for (int pat = 0; pat < numPats; pat++) {
+	    reserve(pat, numPats);
+	    for (int i = 0; i < inputN; i++)
+		inputs[pat * inputN + i] = in.readDouble();
+	    for (int i = 0; i < outputN; i++)
+		targets[pat * outputN + i] = in.readDouble();
+	}
+	this.numPats = (int) numPats;
+	return (true);
+    }
+
+    // writeBinary -- Write this pattern set to the given stream in the
+    // binary format read by "readBinary".
+    void writeBinary(DataOutputStream out) throws IOException {
+	out.writeInt(MAGIC);
+	out.writeLong(numPats);
+	out.writeInt(inputN);
+	out.writeInt(outputN);
+	for (int pat = 0; pat < numPats; pat++) {
+	    for (int i = 0; i < inputN; i++)
+		out.writeDouble(inputs[pat * inputN + i]);
+	    for (int i = 0; i < outputN; i++)
+		out.writeDouble(targets[pat * outputN + i]);
+	}
+    }
 
+    // writeBinaryPatterns -- Write this pattern set to the given file in
+    // the binary pattern file format, replacing any existing file.
+    // Return false on error.
+    public boolean writeBinaryPatterns(String patsFilename) {
+	try {
+	    DataOutputStream out 
+		= new DataOutputStream(new BufferedOutputStream
+				       (new FileOutputStream(patsFilename)));
+	    try {
+		writeBinary(out);
+	    } finally {
+		out.close();
+	    }
+	    // Success!
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	}
+    }
+
+
+}
@@ -0,0 +1,153 @@
+//
+// PatternStream
+//
+// This class reads the patterns in a pattern file a block at a time,
+// rather than all at once, so that pattern sets larger than memory can
+// be used for training.  Both the text and the binary file formats read
+// by PatternSet.readPatterns are supported, compressed or not.  Files of
+// input vectors alone, as used for scoring, may give an output vector
+// dimensionality of zero.
+//
+
+
+import java.io.*;
+
+
+public class PatternStream {
+
+    public int inputN;              // dimensionality of input vectors
+    public int outputN;             // dimensionality of output vectors
+    public long numPats;            // number of patterns in the file
+    String filename;                // the pattern file being streamed
+    PatternTokenizer patsTokens;    // reader for a text file
+    DataInputStream patsIn;         // reader for a binary file
+    long patsRead;                  // patterns read since the last rewind
+
+    // Default constructor ...
+    public PatternStream() {
+	this.inputN = 0;
+	this.outputN = 0;
+	this.numPats = 0;
+	this.filename = null;
+	this.patsTokens = null;
+	this.patsIn = null;
+	this.patsRead = 0;
+    }
+
+    // open -- Open the given pattern file for streaming, reading its
+    // header.  Return false on error.
+    public boolean open(String patsFilename) {
+	close();
+	filename = patsFilename;
+	return (rewind());
+    }
+
+    // rewind -- Return to the first pattern in the file, so that the
+    // patterns can be read again (e.g., for another training epoch).
+    // Return false on error.
+    public boolean rewind() {
+	close();
+	if (filename == null)
+	    return (false);
+	try {
+	    File patsFile = new File(filename);
+	    if (patsFile.exists() && patsFile.canRead()) {
+		BufferedInputStream patsBufferedIn = PatternInput.open(patsFile);
+		if (PatternSet.isBinary(patsBufferedIn)) {
+		    // Read binary pattern set parameters ...
+		    patsIn = new DataInputStream(patsBufferedIn);
+		    patsIn.readInt();
+		    numPats = patsIn.readLong();
+		    inputN = patsIn.readInt();
+		    outputN = patsIn.readInt();
+		} else {
+		    // Read text pattern set parameters ...
+		    patsTokens = new PatternTokenizer
+			(new InputStreamReader(patsBufferedIn));
+		    numPats = patsTokens.nextLong();
+		    inputN = patsTokens.nextInt();
+		    outputN = patsTokens.nextInt();
+		}
+		if ((numPats < 0) || (inputN < 1) || (outputN < 0))
+		    return (false);
+		patsRead = 0;
+		// Success!
+		return (true);
+	    } else {
+		// The file cannot be read ...
+		return (false);
+	    }
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	} catch (NumberFormatException e) {
+	    // The header is not made of numbers ...
+	    return (false);
+	}
+    }
+
+    // readBlock -- Replace the contents of the given pattern set with the
+    // next block of patterns from the file, reading no more patterns than
+    // the set can hold without growing.  Return the number of patterns
+    // read, which is zero once the end of the file has been reached, or a
+    // negative value on error.
+    public int readBlock(PatternSet block) {
+	if (((patsTokens == null) && (patsIn == null)) ||
+	    (block.inputN != inputN) || (block.outputN != outputN))
+	    return (-1);
+	block.clear();
+	int count = (int) Math.min(block.capacity(), numPats - patsRead);
+	try {
+	    if (patsIn != null) {
+		for (int pat = 0; pat < count; pat++) {
+		    for (int i = 0; i < inputN; i++)
+			block.inputs[pat * inputN + i] 
+			    = patsIn.readDouble();
+		    for (int i = 0; i < outputN; i++)
+			block.targets[pat * outputN + i] 
+			    = patsIn.readDouble();
+		}
+	    } else {
+		for (int pat = 0; pat < count; pat++) {
+		    for (int i = 0; i < inputN; i++)
+			block.inputs[pat * inputN + i] 
+			    = patsTokens.nextDouble();
+		    for (int i = 0; i < outputN; i++)
+			block.targets[pat * outputN + i] 
+			    = patsTokens.nextDouble();
+		}
+	    }
+	} catch (IOException e) {
+	    // The file ended early, or something else went wrong ...
+	    return (-1);
+	} catch (NumberFormatException e) {
+	    // A value is not a number ...
+	    return (-1);
+	}
+	block.numPats = count;
+	patsRead = patsRead + count;
+	return (count);
+    }
+
+    // close -- Release the underlying file, if it is open.
+    public void close() {
+	if (patsTokens != null) {
+	    try {
+		patsTokens.close();
+	    } catch (IOException e) {
+		// Nothing more can be done ...
+	    }
+	    patsTokens = null;
+	}
+	if (patsIn != null) {
+	    try {
+		patsIn.close();
+	    } catch (IOException e) {
+		// Nothing more can be done ...
+	    }
+	    patsIn = null;
+	}
+    }
+
+
+}
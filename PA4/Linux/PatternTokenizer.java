@@ -0,0 +1,113 @@
+//
+// PatternTokenizer
+//
+// This class splits the text of a pattern file into tokens separated by
+// white space, and converts them to numbers.  Characters are read through
+// a buffer of its own, and each token is handed straight to
+// Double.parseDouble, Long.parseLong, or Integer.parseInt.  A Scanner does
+// the same job many times more slowly, since it matches every token
+// against locale-sensitive regular expressions, first to decide whether
+// the token is a number and then again to convert it.
+//
+
+
+import java.io.*;
+import java.util.*;
+
+
+public class PatternTokenizer {
+
+    static final int BUFFER_SIZE = 1 << 16;  // characters read at a time
+
+    Reader in;          // the text being split into tokens
+    char[] buf;         // characters read but not yet taken
+    int pos;            // index in buf of the next character to take
+    int end;            // index in buf just past the last character read
+
+    // Constructor with the text to be split specified ...
+    public PatternTokenizer(Reader in) {
+	this.in = in;
+	this.buf = new char[BUFFER_SIZE];
+	this.pos = 0;
+	this.end = 0;
+    }
+
+    // next -- Return the next token, or null if there are no more.
+    public String next() throws IOException {
+	// Skip white space ...
+	while (true) {
+	    if ((pos == end) && (!(fill(pos))))
+		return (null);
+	    if (!(Character.isWhitespace(buf[pos])))
+		break;
+	    pos = pos + 1;
+	}
+	// Take characters up to the next white space or the end ...
+	int start = pos;
+	while (true) {
+	    if (pos == end) {
+		boolean more = fill(start);
+		start = 0;
+		if (!(more))
+		    break;
+	    }
+	    if (Character.isWhitespace(buf[pos]))
+		break;
+	    pos = pos + 1;
+	}
+	return (new String(buf, start, pos - start));
+    }
+
+    // nextDouble -- Return the next token as a double.  Throw EOFException
+    // if there are no more tokens, or NumberFormatException if the token
+    // is not a number.
+    public double nextDouble() throws IOException {
+	return (Double.parseDouble(nextToken()));
+    }
+
+    // nextLong -- Return the next token as a long, throwing as
+    // "nextDouble" does.
+    public long nextLong() throws IOException {
+	return (Long.parseLong(nextToken()));
+    }
+
+    // nextInt -- Return the next token as an int, throwing as "nextDouble"
+    // does.
+    public int nextInt() throws IOException {
+	return (Integer.parseInt(nextToken()));
+    }
+
+    // nextToken -- Return the next token, throwing EOFException if there
+    // are no more.
+    String nextToken() throws IOException {
+	String token = next();
+	if (token == null)
+	    throw new EOFException();
+	return (token);
+    }
+
+    // fill -- Read more characters into the buffer, first moving those from
+    // the given index on to the front, growing the buffer if they fill it.
+    // Return false if there are no more characters to read.
+    boolean fill(int keep) throws IOException {
+	int kept = end - keep;
+	if (keep > 0)
+	    System.arraycopy(buf, keep, buf, 0, kept);
+	else if (kept == buf.length)
+	    buf = Arrays.copyOf(buf, 2 * buf.length);
+	pos = pos - keep;
+	end = kept;
+	int count = in.read(buf, end, buf.length - end);
+	if (count < 0)
+	    return (false);
+	end = end + count;
+	return (true);
+    }
+
+    // close -- Close the text being split.
+    public void close() throws IOException {
+	in.close();
+    }
+
+
+}
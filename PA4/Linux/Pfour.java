@@ -4,6 +4,56 @@
 // This class provides a "main" method that acts as a driver program for
 // a very simple "batch mode" backpropagtion artificial neural network.
 //
+// Options may be given on the command line:
+//
+//   -stream N    read the training set N patterns at a time during each
+//                epoch, rather than holding it all in memory, reading
+//                the next block in the background during training
+//   -checkpoint FILE
+//                save the weights to FILE, in the binary weight format,
+//                periodically during training and once training is done
+//   -checkpoint-epochs N
+//                checkpoint every N epochs (default 100)
+//   -checkpoint-seconds T
+//                checkpoint every T seconds, in addition
+//   -resume FILE
+//                continue training from a checkpoint FILE, rather than
+//                starting from random weights
+//   -warm-start FILE
+//                start training from the weights in FILE, rather than
+//                from random weights, so that a trained network can be
+//                refined using a training set of new patterns
+//   -replay FILE F
+//                mix a random fraction F of the earlier patterns in FILE
+//                into each training epoch, stopping once the SSE over
+//                both the new and the earlier patterns meets the SSE
+//                stopping criterion (not with -stream, since that SSE
+//                needs the whole training set in memory)
+//   -report FORMAT FILE
+//                write the testing results to FILE, rather than printing
+//                them, in FORMAT "text", "csv", or "binary" (see
+//                TestReport)
+//   -test-threads N
+//                test the network on N threads at once, with the same
+//                results as testing on one
+//   -metrics     print a summary of where training time is being spent,
+//                and of memory allocated, with each progress report (see
+//                TrainingMetrics)
+//   -log FILE    also write a record of each progress report, including
+//                the time spent in each phase of training, to FILE as a
+//                line of JSON, without making training wait for the disk
+//                (see TrainingLog)
+//   -log-test    with -log, also include the testing SSE in each record;
+//                this runs a full pass over the testing set, on the
+//                training thread, at every progress report, which costs
+//                about as much as a training epoch without the weight
+//                updates when the testing set is as large as the training
+//                set
+//   -metrics-port N
+//                serve the progress of training over HTTP, in the
+//                Prometheus text format, at http://127.0.0.1:N/metrics,
+//                or on any free port if N is 0 (see MetricsServer)
+//
 // David Noelle -- Tue Nov 20 21:08:51 PST 2012
 //
 
@@ -15,6 +65,7 @@ import java.util.*;
 public class Pfour {
 
     public static void main(String[] args) {
+	MetricsServer metricsServer = null;
 	try {
 	    BP backprop = new BP();
 	    InputStreamReader converter = new InputStreamReader(System.in);
@@ -30,7 +81,94 @@ public class Pfour {
 	    double stoppingCriterion = 0.05;
 	    String trainingFilename;
 	    String testingFilename;
+	    int streamBlockSize = 0;
+	    String checkpointFilename = null;
+	    int checkpointEpochs = 100;
+	    double checkpointSeconds = 0.0;
+	    String resumeFilename = null;
+	    String warmStartFilename = null;
+	    String replayFilename = null;
+	    double replayFraction = 0.0;
+	    int reportFormat = TestReport.TEXT;
+	    String reportFilename = null;
+	    int testThreads = 1;
+	    boolean reportMetrics = false;
+	    String logFilename = null;
+	    boolean logTesting = false;
+	    int metricsPort = -1;
 
+	    // Process command line options ...
+	    for (int a = 0; a < args.length; a++) {
+		if (args[a].equals("-stream") && (a + 1 < args.length)) {
+		    streamBlockSize = Integer.parseInt(args[++a]);
+		    if (streamBlockSize < 1) {
+			System.err.println("Invalid stream block size.");
+			return;
+		    }
+		} else if (args[a].equals("-checkpoint") &&
+			   (a + 1 < args.length)) {
+		    checkpointFilename = args[++a];
+		} else if (args[a].equals("-checkpoint-epochs") &&
+			   (a + 1 < args.length)) {
+		    checkpointEpochs = Integer.parseInt(args[++a]);
+		} else if (args[a].equals("-checkpoint-seconds") &&
+			   (a + 1 < args.length)) {
+		    checkpointSeconds = Double.parseDouble(args[++a]);
+		} else if (args[a].equals("-resume") && (a + 1 < args.length)) {
+		    resumeFilename = args[++a];
+		} else if (args[a].equals("-warm-start") && 
+			   (a + 1 < args.length)) {
+		    warmStartFilename = args[++a];
+		} else if (args[a].equals("-replay") && (a + 2 < args.length)) {
+		    replayFilename = args[++a];
+		    replayFraction = Double.parseDouble(args[++a]);
+		    if (!((replayFraction >= 0.0) &&
+			  (replayFraction <= 1.0))) {
+			System.err.println("Invalid replay fraction; it must "
+					   + "be between 0 and 1.");
+			return;
+		    }
+		} else if (args[a].equals("-report") && (a + 2 < args.length)) {
+		    reportFormat = TestReport.parseFormat(args[++a]);
+		    reportFilename = args[++a];
+		    if (reportFormat < 0) {
+			System.err.println("Invalid report format.");
+			return;
+		    }
+		} else if (args[a].equals("-test-threads") &&
+			   (a + 1 < args.length)) {
+		    testThreads = Integer.parseInt(args[++a]);
+		    if (testThreads < 1) {
+			System.err.println("Invalid number of testing threads.");
+			return;
+		    }
+		} else if (args[a].equals("-metrics")) {
+		    reportMetrics = true;
+		} else if (args[a].equals("-log") && (a + 1 < args.length)) {
+		    logFilename = args[++a];
+		} else if (args[a].equals("-log-test")) {
+		    logTesting = true;
+		} else if (args[a].equals("-metrics-port") &&
+			   (a + 1 < args.length)) {
+		    metricsPort = Integer.parseInt(args[++a]);
+		    if ((metricsPort < 0) || (metricsPort > 65535)) {
+			System.err.println("Invalid metrics port.");
+			return;
+		    }
+		} else {
+		    System.err.println("Unknown option: " + args[a]);
+		    return;
+		}
+	    }
+	    if (logTesting && (logFilename == null)) {
+		System.err.println("The -log-test option requires -log.");
+		return;
+	    }
+	    if ((streamBlockSize > 0) && (replayFilename != null)) {
+		System.err.println("The -stream and -replay options cannot be "
+				   + "used together.");
+		return;
+	    }
 	    System.out.println("BACKPROPAGATION LEARNING ALGORITHM");
 	    // Get network information ...
 	    System.out.println("Enter the number of input units:");
@@ -123,27 +261,101 @@ public class Pfour {
 		return;
 	    }
 	    // Read the pattern sets ...
-	    if (!(backprop.readTrainingPatterns(trainingFilename))) {
-		System.err.println("Unable to read training pattern file.");
-		return;
+	    if (streamBlockSize > 0) {
+		if (!(backprop.streamTrainingPatterns(trainingFilename,
+						      streamBlockSize))) {
+		    System.err.println("Unable to read training pattern file.");
+		    return;
+		}
+	    } else {
+		if (!(backprop.readTrainingPatterns(trainingFilename))) {
+		    System.err.println("Unable to read training pattern file.");
+		    return;
+		}
 	    }
 	    if (!(backprop.readTestingPatterns(testingFilename))) {
 		System.err.println("Unable to read testing pattern file.");
 		return;
 	    }
+	    if ((replayFilename != null) &&
+		(!(backprop.readReplayPatterns(replayFilename, 
+					       replayFraction)))) {
+		System.err.println("Unable to read replay pattern file.");
+		return;
+	    }
 	    // Set learning parameters ...
 	    backprop.setLearningRate(lRate);
 	    backprop.setInitialWeightRange(initialWeightRange);
 	    // Perform training ...
 	    double thisSSE = stoppingCriterion + 1.0;
-	    backprop.initNetwork();
+	    if (resumeFilename != null) {
+		if (!(backprop.readCheckpoint(resumeFilename))) {
+		    System.err.println("Unable to read checkpoint file.");
+		    return;
+		}
+	    } else if (warmStartFilename != null) {
+		if (!(backprop.initNetwork(warmStartFilename))) {
+		    System.err.println("Unable to read warm start weights.");
+		    return;
+		}
+	    } else {
+		backprop.initNetwork();
+	    }
+	    backprop.setTestingThreads(testThreads);
+	    Checkpointer checkpointer = null;
+	    if (checkpointFilename != null)
+		checkpointer = new Checkpointer(backprop, 
+						checkpointFilename,
+						checkpointEpochs,
+						checkpointSeconds);
+	    int checkpointsFailed = 0;
+	    if (metricsPort >= 0) {
+		metricsServer = new MetricsServer(backprop.metrics());
+		if (!(metricsServer.start(metricsPort))) {
+		    System.err.println("Unable to start metrics server.");
+		    return;
+		}
+		System.out.println("Serving metrics at http://127.0.0.1:" +
+				   String.valueOf(metricsServer.port()) +
+				   "/metrics.");
+	    }
+	    TrainingLog log = null;
+	    if (logFilename != null) {
+		log = new TrainingLog(logFilename, 1024);
+		if (!(log.open())) {
+		    System.err.println("Unable to write training log file.");
+		    return;
+		}
+	    }
+	    double stopSSE = thisSSE;
 	    while ((backprop.epochs < epochCriterion) &&
-		   (thisSSE > stoppingCriterion)) {
+		   (stopSSE > stoppingCriterion)) {
 		thisSSE = backprop.runTrainingEpoch();
 		if (thisSSE < 0.0) {
 		    System.err.println("Training epoch failed.");
 		    return;
 		}
+		if (checkpointer != null) {
+		    checkpointer.epochDone(backprop.epochs);
+		    if (checkpointer.checkpointsFailed() > checkpointsFailed) {
+			checkpointsFailed = checkpointer.checkpointsFailed();
+			System.err.println("Unable to write checkpoint file ("
+					   + String.valueOf(checkpointsFailed)
+					   + " failed so far).");
+		    }
+		}
+		if (replayFilename == null) {
+		    stopSSE = thisSSE;
+		} else if (backprop.epochs % epochReportBlock == 0) {
+		    // When replaying earlier patterns, stop based on the
+		    // error over the new and earlier patterns together, 
+		    // which is checked once per report block ...
+		    stopSSE = backprop.combinedSSE();
+		    if (stopSSE < 0.0) {
+			System.err.println("Combined SSE calculation failed.");
+			return;
+		    }
+		}
 		if (backprop.epochs % epochReportBlock == 0) {
 		    // Report on training progress ...
 		    System.out.println("Epoch " + 
@@ -151,6 +363,18 @@ public class Pfour {
 				       ":  SSE = " + 
 				       String.valueOf(thisSSE) + 
 				       ".");
+		    if (replayFilename != null)
+			System.out.println("Epoch " + 
+					   String.valueOf(backprop.epochs) + 
+					   ":  Combined SSE = " + 
+					   String.valueOf(stopSSE) + 
+					   ".");
+		    if (reportMetrics)
+			System.out.println(backprop.metrics().summary());
+		    if (log != null)
+			log.log(backprop.epochs, thisSSE, 
+				logTesting ? backprop.runTestingEpoch() : -1.0,
+				backprop.metrics());
 		}
 	    }
 	    System.out.println("Final Epoch " +
@@ -158,9 +382,45 @@ public class Pfour {
 			       ":  SSE = " + 
 			       String.valueOf(thisSSE) + 
 			       ".");
+	    if (log != null) {
+		if (backprop.epochs % epochReportBlock != 0)
+		    log.log(backprop.epochs, thisSSE, 
+			    logTesting ? backprop.runTestingEpoch() : -1.0,
+			    backprop.metrics());
+		if (!(log.close())) {
+		    System.err.println("Unable to write training log file.");
+		    return;
+		}
+		if (log.dropped() > 0)
+		    System.out.println("Training log records dropped = " +
+				       String.valueOf(log.dropped()) + ".");
+	    }
+	    if (checkpointer != null) {
+		// Save the final weights ...
+		checkpointer.finish();
+		checkpointer.checkpoint(backprop.epochs);
+		if (!(checkpointer.finish())) {
+		    System.err.println("Unable to write checkpoint file.");
+		    return;
+		}
+	    }
+	    if (streamBlockSize > 0) {
+		System.out.println("Time spent waiting for patterns = " +
+				   String.valueOf(backprop.dataWaitTime()) +
+				   " seconds.");
+	    }
 	    // Perform testing ...
 	    System.out.println();
-	    thisSSE = backprop.runTestingEpoch(System.out);
+	    if (reportFilename != null) {
+		OutputStream reportOut = new FileOutputStream(reportFilename);
+		try {
+		    thisSSE = backprop.runTestingEpoch(reportOut, reportFormat);
+		} finally {
+		    reportOut.close();
+		}
+	    } else {
+		thisSSE = backprop.runTestingEpoch(System.out);
+	    }
 	    if (thisSSE < 0.0) {
 		System.err.println("Testing epoch failed.");
 		return;
@@ -172,6 +432,9 @@ public class Pfour {
 	    System.out.println("ARTIFICIAL NEURAL NETWORK RUN COMPLETE");
 	} catch (Exception e) {
 	    // Something went wrong ...
+	} finally {
+	    if (metricsServer != null)
+		metricsServer.stop();
 	}
     }
 
@@ -0,0 +1,246 @@
+//
+// TrainingBenchmark
+//
+// This class measures how whole training runs scale, over a grid of
+// network shapes, training set sizes, and numbers of threads.  For each
+// combination, it builds networks with the given number of hidden layers,
+// each layer having the given width, trains them with BP on a training
+// set of random patterns of the given size, and records the patterns and
+// epochs trained per second, the time spent in garbage collection, and the
+// peak heap use.  BP trains a network on a single thread, so the thread
+// count is the number of networks trained at once, each by its own thread,
+// on a shared training set.
+//
+// Results are appended to a file, one line per combination, as a JSON
+// object, so that runs made at different times can be compared.  Options
+// may be given on the command line:
+//
+//   -widths W,...      units in every layer (default 16,64,256)
+//   -depths D,...      numbers of hidden layers (default 1,2)
+//   -patterns P,...    numbers of training patterns (default 1000,10000)
+//   -threads T,...     numbers of networks trained at once (default 1)
+//   -epochs N          epochs measured for each combination (default 20)
+//   -warmup N          epochs run first, and not measured (default 5)
+//   -seed S            seed for the random patterns and weights (default 1)
+//
+
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+
+public class TrainingBenchmark {
+
+    int[] widths;             // units in every layer
+    int[] depths;             // numbers of hidden layers
+    int[] patterns;           // numbers of training patterns
+    int[] threads;            // numbers of networks trained at once
+    int epochs;               // epochs measured for each combination
+    int warmup;               // epochs run before measuring
+    long seed;                // seed for patterns and weights
+
+    // Default constructor ...
+    public TrainingBenchmark() {
+	this.widths = new int[] {16, 64, 256};
+	this.depths = new int[] {1, 2};
+	this.patterns = new int[] {1000, 10000};
+	this.threads = new int[] {1};
+	this.epochs = 20;
+	this.warmup = 5;
+	this.seed = 1;
+    }
+
+    // buildNetwork -- Return a trainer for a network with the given width
+    // and number of hidden layers, training on the given patterns, with
+    // weights initialized from the given seed.  Return null on error.
+    static BP buildNetwork(int width, int depth, PatternSet pats, long seed) {
+	BP bp = new BP();
+	Layer previous = bp.net.createLayer(width);
+	for (int d = 0; d <= depth; d++) {
+	    Layer next = bp.net.createLayer(width);
+	    bp.net.createProjection(previous, next);
+	    previous = next;
+	}
+	bp.trainPats = pats;
+	bp.setRandomSeed(seed);
+	if (!(bp.initNetwork()))
+	    return (null);
+	return (bp);
+    }
+
+    // randomPatterns -- Return a set of the given number of random
+    // patterns, with inputs and targets of the given width.
+    static PatternSet randomPatterns(int numPats, int width,
+				     Random generator) {
+	PatternSet pats = new PatternSet(width, width, numPats);
+	for (int i = 0; i < numPats * width; i++) {
+	    pats.inputs[i] = generator.nextDouble();
+	    pats.targets[i] = generator.nextDouble();
+	}
+	pats.numPats = numPats;
+	return (pats);
+    }
+
+    // trainAll -- Run the given number of training epochs on each of the
+    // given trainers, each on a thread of its own.  Return false if any
+    // epoch fails.
+    static boolean trainAll(final BP[] trainers, final int numEpochs) {
+	final boolean[] ok = new boolean[trainers.length];
+	Thread[] workers = new Thread[trainers.length];
+	for (int t = 0; t < trainers.length; t++) {
+	    final int id = t;
+	    workers[t] = new Thread(new Runnable() {
+		    public void run() {
+			ok[id] = true;
+			for (int e = 0; e < numEpochs; e++)
+			    if (trainers[id].runTrainingEpoch() < 0.0)
+				ok[id] = false;
+		    }
+		}, "TrainingBenchmark trainer " + t);
+	    workers[t].start();
+	}
+	boolean allOk = true;
+	for (int t = 0; t < trainers.length; t++) {
+	    try {
+		workers[t].join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return (false);
+	    }
+	    allOk = allOk && ok[t];
+	}
+	return (allOk);
+    }
+
+    // gcMillis -- Return the total time spent in garbage collection so
+    // far, in milliseconds.
+    static long gcMillis() {
+	long total = 0;
+	for (GarbageCollectorMXBean gc
+		 : ManagementFactory.getGarbageCollectorMXBeans())
+	    total = total + Math.max(0, gc.getCollectionTime());
+	return (total);
+    }
+
+    // resetPeakHeap -- Start tracking peak heap use afresh.
+    static void resetPeakHeap() {
+	for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+	    if (pool.getType() == MemoryType.HEAP)
+		pool.resetPeakUsage();
+    }
+
+    // peakHeap -- Return the peak heap use since it was last reset, in
+    // bytes, summed over the heap memory pools.
+    static long peakHeap() {
+	long total = 0;
+	for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+	    if (pool.getType() == MemoryType.HEAP)
+		total = total + pool.getPeakUsage().getUsed();
+	return (total);
+    }
+
+    // run -- Measure one combination, returning its result as a line of
+    // JSON, or null on error.
+    String run(int width, int depth, int numPats, int numThreads) {
+	Random generator = new Random(seed);
+	PatternSet pats = randomPatterns(numPats, width, generator);
+	BP[] trainers = new BP[numThreads];
+	for (int t = 0; t < numThreads; t++) {
+	    trainers[t] = buildNetwork(width, depth, pats, seed + t);
+	    if (trainers[t] == null)
+		return (null);
+	}
+	if (!(trainAll(trainers, warmup)))
+	    return (null);
+	System.gc();
+	resetPeakHeap();
+	long gcBefore = gcMillis();
+	long start = System.nanoTime();
+	if (!(trainAll(trainers, epochs)))
+	    return (null);
+	double seconds = (System.nanoTime() - start) / 1.0e9;
+	long gcTime = gcMillis() - gcBefore;
+	double epochsPerSecond = (numThreads * (double) epochs) / seconds;
+	return (String.format
+		(Locale.ROOT,
+		 "{\"time\": \"%s\", \"java\": \"%s\", \"processors\": %d, "
+		 + "\"width\": %d, \"depth\": %d, \"patterns\": %d, "
+		 + "\"threads\": %d, \"epochs\": %d, \"seconds\": %.6f, "
+		 + "\"patterns_per_sec\": %.1f, \"epochs_per_sec\": %.3f, "
+		 + "\"gc_ms\": %d, \"peak_heap_bytes\": %d}",
+		 java.time.Instant.now(),
+		 System.getProperty("java.version"),
+		 Runtime.getRuntime().availableProcessors(),
+		 width, depth, numPats, numThreads, epochs, seconds,
+		 epochsPerSecond * numPats, epochsPerSecond, gcTime,
+		 peakHeap()));
+    }
+
+    // parseList -- Return the comma-separated integers in the given
+    // string.
+    static int[] parseList(String list) {
+	String[] items = list.split(",");
+	int[] vals = new int[items.length];
+	for (int i = 0; i < items.length; i++)
+	    vals[i] = Integer.parseInt(items[i].trim());
+	return (vals);
+    }
+
+    // main -- Run every combination, appending the results to the given
+    // file and printing them as well.
+    public static void main(String[] args) {
+	if (args.length < 1) {
+	    System.err.println("Usage:  java TrainingBenchmark RESULTS "
+			       + "[OPTIONS]");
+	    return;
+	}
+	TrainingBenchmark bench = new TrainingBenchmark();
+	for (int a = 1; a < args.length; a++) {
+	    if (args[a].equals("-widths") && (a + 1 < args.length)) {
+		bench.widths = parseList(args[++a]);
+	    } else if (args[a].equals("-depths") && (a + 1 < args.length)) {
+		bench.depths = parseList(args[++a]);
+	    } else if (args[a].equals("-patterns") && (a + 1 < args.length)) {
+		bench.patterns = parseList(args[++a]);
+	    } else if (args[a].equals("-threads") && (a + 1 < args.length)) {
+		bench.threads = parseList(args[++a]);
+	    } else if (args[a].equals("-epochs") && (a + 1 < args.length)) {
+		bench.epochs = Integer.parseInt(args[++a]);
+	    } else if (args[a].equals("-warmup") && (a + 1 < args.length)) {
+		bench.warmup = Integer.parseInt(args[++a]);
+	    } else if (args[a].equals("-seed") && (a + 1 < args.length)) {
+		bench.seed = Long.parseLong(args[++a]);
+	    } else {
+		System.err.println("Unknown option: " + args[a]);
+		return;
+	    }
+	}
+	try {
+	    PrintWriter results
+		= new PrintWriter(new FileWriter(args[0], true));
+	    try {
+		for (int width : bench.widths)
+		    for (int depth : bench.depths)
+			for (int numPats : bench.patterns)
+			    for (int numThreads : bench.threads) {
+				String result = bench.run(width, depth,
+							  numPats, numThreads);
+				if (result == null) {
+				    System.err.println("Training failed.");
+				    return;
+				}
+				results.println(result);
+				results.flush();
+				System.out.println(result);
+			    }
+	    } finally {
+		results.close();
+	    }
+	} catch (IOException e) {
+	    System.err.println("Unable to write results file.");
+	}
+    }
+
+
+}
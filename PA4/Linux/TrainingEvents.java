@@ -0,0 +1,91 @@
+//
+// TrainingEvents
+//
+// This class holds the Java Flight Recorder events that mark the progress
+// of training, so that a recording shows each training epoch, and each
+// time that weights or patterns are read or written, alongside the
+// garbage collection, allocation, and I/O events that the JVM records on
+// its own.  Recording is turned on from outside the program, such as with
+// the "-XX:StartFlightRecording" option of "java".  When nothing is being
+// recorded, an event costs little more than the test of whether it should
+// be committed.
+//
+
+
+import jdk.jfr.*;
+
+
+public class TrainingEvents {
+
+    // Epoch -- One training epoch, lasting as long as the epoch did.
+    @Name("pa4.Epoch")
+    @Label("Training Epoch")
+    @Category({"PA4", "Training"})
+    @Description("A pass of backpropagation over the training set")
+    static class Epoch extends Event {
+	@Label("Epoch")
+	int epoch;
+
+	@Label("SSE")
+	@Description("Sum-squared error over the training patterns")
+	double sse;
+
+	@Label("Patterns")
+	long patterns;
+    }
+
+    // WeightsLoad -- The reading of network weights from a file.
+    @Name("pa4.WeightsLoad")
+    @Label("Weights Load")
+    @Category({"PA4", "I/O"})
+    @Description("Network weights read from a file")
+    static class WeightsLoad extends Event {
+	@Label("File")
+	String file;
+
+	@Label("Purpose")
+	@Description("Warm start or checkpoint")
+	String purpose;
+
+	@Label("Succeeded")
+	boolean succeeded;
+    }
+
+    // WeightsSave -- The writing of network weights to a file.
+    @Name("pa4.WeightsSave")
+    @Label("Weights Save")
+    @Category({"PA4", "I/O"})
+    @Description("Network weights written to a file")
+    static class WeightsSave extends Event {
+	@Label("File")
+	String file;
+
+	@Label("Epoch")
+	int epoch;
+
+	@Label("Succeeded")
+	boolean succeeded;
+    }
+
+    // PatternsLoad -- The reading of a set, or a block, of patterns.
+    @Name("pa4.PatternsLoad")
+    @Label("Patterns Load")
+    @Category({"PA4", "I/O"})
+    @Description("Patterns read for training or testing")
+    static class PatternsLoad extends Event {
+	@Label("File")
+	String file;
+
+	@Label("Purpose")
+	@Description("Training, testing, replay, or a streamed training block")
+	String purpose;
+
+	@Label("Patterns")
+	long patterns;
+
+	@Label("Succeeded")
+	boolean succeeded;
+    }
+
+
+}
@@ -0,0 +1,197 @@
+//
+// TrainingLog
+//
+// This class writes a record of training progress to a file, as one line
+// of JSON per record, so that a run can be followed, or analyzed later,
+// with ordinary tools.  Each record holds the epoch number, the training
+// SSE, the testing SSE (when known), the number of patterns trained per
+// second since the previous record, and the time spent in each phase of
+// training so far, as kept by TrainingMetrics.
+//
+// Records are formatted and written on a separate writer thread, so that
+// the training thread never waits for the disk.  They are handed over
+// through a bounded queue, and a record that arrives when the queue is
+// full is dropped and counted, rather than holding up training.
+//
+
+
+import java.io.*;
+import java.util.concurrent.*;
+
+
+public class TrainingLog {
+
+    static final int BUFFER_SIZE = 1 << 16;    // bytes buffered at a time
+
+    // Record -- The numbers logged at one point in training.
+    static class Record {
+	long time;                // wall clock time, in milliseconds
+	int epoch;                // number of the last epoch completed
+	double sse;               // training SSE
+	double testSSE;           // testing SSE, or negative if not known
+	double patternsPerSecond; // throughput since the previous record
+	double lastEpochSeconds;  // time taken by the last epoch
+	double forwardSeconds;    // time in each phase, so far ...
+	double backwardSeconds;
+	double deltaSeconds;
+	double updateSeconds;
+	long lastEpochBytes;      // bytes allocated in the last epoch
+    }
+
+    String filename;                  // the log file
+    BlockingQueue<Record> pending;    // records waiting to be written
+    Record end;                       // marks the end of the log
+    Thread writer;                    // the thread writing records
+    volatile boolean failed;          // set if a record could not be written
+    volatile long dropped;            // records dropped because queue full
+    long lastPatterns;                // metrics at the previous record ...
+    double lastSeconds;
+
+    // Constructor with the log file and the number of records that may be
+    // waiting to be written at once specified ...
+    public TrainingLog(String filename, int capacity) {
+	this.filename = filename;
+	this.pending = new ArrayBlockingQueue<Record>(capacity);
+	this.end = new Record();
+	this.writer = null;
+	this.failed = false;
+	this.dropped = 0;
+	this.lastPatterns = 0;
+	this.lastSeconds = 0.0;
+    }
+
+    // open -- Create the log file, replacing any file of the same name,
+    // and start the writer thread.  Return false on error.
+    public boolean open() {
+	final Writer out;
+	try {
+	    out = new BufferedWriter(new FileWriter(filename), BUFFER_SIZE);
+	} catch (IOException e) {
+	    return (false);
+	}
+	writer = new Thread(new Runnable() {
+		public void run() {
+		    drain(out);
+		}
+	    }, "TrainingLog");
+	writer.setDaemon(true);
+	writer.start();
+	return (true);
+    }
+
+    // log -- Queue a record of the given epoch, training SSE, and testing
+    // SSE (negative if not known), with timings from the given metrics.
+    // Return false if the record had to be dropped.
+    public boolean log(int epoch, double sse, double testSSE,
+		       TrainingMetrics metrics) {
+	Record rec = new Record();
+	rec.time = System.currentTimeMillis();
+	rec.epoch = epoch;
+	rec.sse = sse;
+	rec.testSSE = testSSE;
+	long patterns = metrics.patterns();
+	double seconds = metrics.epochSeconds();
+	rec.patternsPerSecond = (seconds > lastSeconds)
+	    ? (patterns - lastPatterns) / (seconds - lastSeconds) : 0.0;
+	lastPatterns = patterns;
+	lastSeconds = seconds;
+	rec.lastEpochSeconds = metrics.lastEpochSeconds();
+	rec.forwardSeconds = metrics.forwardSeconds();
+	rec.backwardSeconds = metrics.backwardSeconds();
+	rec.deltaSeconds = metrics.deltaSeconds();
+	rec.updateSeconds = metrics.updateSeconds();
+	rec.lastEpochBytes = metrics.lastEpochBytes();
+	// Never wait for room in the queue ...
+	if (pending.offer(rec))
+	    return (true);
+	dropped = dropped + 1;
+	return (false);
+    }
+
+    // dropped -- Return the number of records dropped so far because
+    // too many were waiting to be written.
+    public long dropped() {
+	return (dropped);
+    }
+
+    // drain -- Write queued records to the given writer until the end
+    // marker arrives, flushing whenever the queue runs dry, so that the
+    // file keeps up with training.
+    void drain(Writer out) {
+	StringBuilder line = new StringBuilder();
+	try {
+	    try {
+		Record rec;
+		while ((rec = pending.take()) != end) {
+		    line.setLength(0);
+		    format(rec, line);
+		    out.append(line);
+		    if (pending.isEmpty())
+			out.flush();
+		}
+	    } finally {
+		out.close();
+	    }
+	} catch (IOException e) {
+	    // Something went wrong, so stop logging, but keep draining
+	    // the queue so that it never fills for good ...
+	    failed = true;
+	    try {
+		while (pending.take() != end)
+		    ;
+	    } catch (InterruptedException ie) {
+		// Give up ...
+	    }
+	} catch (InterruptedException e) {
+	    failed = true;
+	}
+    }
+
+    // format -- Append the given record, as a line of JSON, to the given
+    // buffer.
+    static void format(Record rec, StringBuilder buf) {
+	buf.append("{\"time\": \"")
+	    .append(java.time.Instant.ofEpochMilli(rec.time))
+	    .append("\", \"epoch\": ").append(rec.epoch);
+	appendNumber(buf, "sse", rec.sse);
+	if (rec.testSSE >= 0.0)
+	    appendNumber(buf, "test_sse", rec.testSSE);
+	appendNumber(buf, "patterns_per_sec", rec.patternsPerSecond);
+	appendNumber(buf, "epoch_seconds", rec.lastEpochSeconds);
+	appendNumber(buf, "forward_seconds", rec.forwardSeconds);
+	appendNumber(buf, "backward_seconds", rec.backwardSeconds);
+	appendNumber(buf, "delta_seconds", rec.deltaSeconds);
+	appendNumber(buf, "update_seconds", rec.updateSeconds);
+	if (rec.lastEpochBytes >= 0)
+	    buf.append(", \"epoch_bytes\": ").append(rec.lastEpochBytes);
+	buf.append("}\n");
+    }
+
+    // appendNumber -- Append a named number to a JSON object, writing
+    // values that JSON cannot represent as null.
+    static void appendNumber(StringBuilder buf, String name, double val) {
+	buf.append(", \"").append(name).append("\": ");
+	if (Double.isNaN(val) || Double.isInfinite(val))
+	    buf.append("null");
+	else
+	    buf.append(val);
+    }
+
+    // close -- Write every record still queued, then close the log file.
+    // Return false if any record could not be written.
+    public boolean close() {
+	if (writer == null)
+	    return (!(failed));
+	try {
+	    pending.put(end);
+	    writer.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return (false);
+	}
+	writer = null;
+	return (!(failed));
+    }
+
+
+}
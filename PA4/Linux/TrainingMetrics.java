@@ -0,0 +1,275 @@
+//
+// TrainingMetrics
+//
+// This class keeps track of where the time goes during training.  BP
+// times each phase of backpropagation -- the forward pass, the backward
+// pass, the accumulation of weight deltas, and the weight update -- and
+// counts the patterns that it processes.  Reading the clock around every
+// phase of every pattern would cost a noticeable fraction of the time
+// taken by a small network, so the per-pattern phases are only timed for
+// one pattern in every SAMPLE_INTERVAL, counting across epochs, and the
+// time spent on the rest is estimated from those samples.  The estimate
+// scales the time of all of the samples taken so far by the ratio of
+// patterns processed to patterns timed, so that it stays right when an
+// epoch holds fewer than SAMPLE_INTERVAL patterns, and some epochs have
+// no timed pattern at all.  The weight update happens once per epoch
+// and is always timed.  The bytes allocated by the training thread during
+// each epoch are also recorded, when the JVM is able to report them.
+//
+// Totals are published once per epoch, so they may be read from any
+// thread while training continues.  The SSE of the most recent epochs is
+// kept as well, in a ring of atomic values, which a reader can check
+// for having been overwritten while it was being read.
+//
+
+
+import java.lang.management.*;
+import java.util.concurrent.atomic.*;
+
+
+public class TrainingMetrics {
+
+    static final int SAMPLE_INTERVAL = 32;  // patterns per timed pattern
+    static final int SSE_HISTORY = 128;     // epochs of SSE kept
+
+    // These are only touched by the training thread ...
+    long epochStart;            // clock reading at start of epoch
+    long threadId;              // thread running the current epoch
+    long bytesStart;            // bytes allocated by it, at start of epoch
+    long epochPatterns;         // patterns so far in the current epoch
+    long sampledPatterns;       // patterns timed, in all epochs
+    long sampleForward;         // nanoseconds in timed forward passes
+    long sampleBackward;        // nanoseconds in timed backward passes
+    long sampleDelta;           // nanoseconds in timed delta accumulation
+    long updateTime;            // nanoseconds in this epoch's update
+    int untilSample;            // patterns until the next timed one
+    com.sun.management.ThreadMXBean threads;  // allocation counter, if any
+
+    // These are published at the end of each epoch ...
+    volatile int epochs;                // number of the last epoch
+    volatile long patterns;             // patterns processed
+    volatile long forwardTime;          // estimated forward nanoseconds
+    volatile long backwardTime;         // estimated backward nanoseconds
+    volatile long deltaTime;            // estimated delta nanoseconds
+    volatile long totalUpdateTime;      // weight update nanoseconds
+    volatile long epochTime;            // nanoseconds in whole epochs
+    volatile long lastEpochTime;        // nanoseconds in the last epoch
+    volatile long lastEpochPatterns;    // patterns in the last epoch
+    volatile long allocatedBytes;       // bytes allocated, or -1
+    volatile long lastEpochBytes;       // bytes in the last epoch, or -1
+    volatile double lastSSE;            // SSE of the last epoch
+    volatile int firstEpoch;            // first epoch recorded here, or 0
+    AtomicLongArray sseHistory;         // bits of recent SSE, by epoch
+
+    // Default constructor ...
+    public TrainingMetrics() {
+	this.untilSample = 1;
+	this.threads = null;
+	ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+	if (bean instanceof com.sun.management.ThreadMXBean) {
+	    com.sun.management.ThreadMXBean sunBean
+		= (com.sun.management.ThreadMXBean) bean;
+	    if (sunBean.isThreadAllocatedMemorySupported() &&
+		sunBean.isThreadAllocatedMemoryEnabled())
+		this.threads = sunBean;
+	}
+	this.allocatedBytes = (threads == null) ? -1 : 0;
+	this.lastEpochBytes = -1;
+	this.firstEpoch = 0;
+	this.sseHistory = new AtomicLongArray(SSE_HISTORY);
+    }
+
+    // threadBytes -- Return the bytes allocated so far by the thread
+    // running the current epoch, or -1 if this cannot be measured.
+    long threadBytes() {
+	if (threads == null)
+	    return (-1);
+	return (threads.getThreadAllocatedBytes(threadId));
+    }
+
+    // startEpoch -- Note the start of a training epoch, on the current
+    // thread.
+    void startEpoch() {
+	threadId = Thread.currentThread().getId();
+	bytesStart = threadBytes();
+	epochPatterns = 0;
+	updateTime = 0;
+	epochStart = System.nanoTime();
+    }
+
+    // startPattern -- Count another training pattern, returning true if
+    // its phases should be timed.
+    boolean startPattern() {
+	epochPatterns = epochPatterns + 1;
+	untilSample = untilSample - 1;
+	if (untilSample > 0)
+	    return (false);
+	untilSample = SAMPLE_INTERVAL;
+	return (true);
+    }
+
+    // recordPattern -- Record the clock readings taken at the start of a
+    // timed pattern and at the end of each of its phases.
+    void recordPattern(long start, long forwardEnd, long backwardEnd,
+		       long deltaEnd) {
+	sampledPatterns = sampledPatterns + 1;
+	sampleForward = sampleForward + (forwardEnd - start);
+	sampleBackward = sampleBackward + (backwardEnd - forwardEnd);
+	sampleDelta = sampleDelta + (deltaEnd - backwardEnd);
+    }
+
+    // recordUpdate -- Record the time taken to update the weights.
+    void recordUpdate(long nanos) {
+	updateTime = updateTime + nanos;
+    }
+
+    // endEpoch -- Note the successful end of the training epoch with the
+    // given number and SSE, and publish the updated totals.
+    void endEpoch(int epoch, double sse) {
+	long elapsed = System.nanoTime() - epochStart;
+	long total = patterns + epochPatterns;
+	if (sampledPatterns > 0) {
+	    // Scale the timed patterns up to all of the patterns ...
+	    double scale = (double) total / sampledPatterns;
+	    forwardTime = Math.round(sampleForward * scale);
+	    backwardTime = Math.round(sampleBackward * scale);
+	    deltaTime = Math.round(sampleDelta * scale);
+	}
+	totalUpdateTime = totalUpdateTime + updateTime;
+	epochTime = epochTime + elapsed;
+	lastEpochTime = elapsed;
+	lastEpochPatterns = epochPatterns;
+	if (bytesStart >= 0) {
+	    long bytes = threadBytes() - bytesStart;
+	    lastEpochBytes = bytes;
+	    allocatedBytes = allocatedBytes + bytes;
+	}
+	patterns = total;
+	sseHistory.set(epoch % SSE_HISTORY, Double.doubleToRawLongBits(sse));
+	lastSSE = sse;
+	if (firstEpoch == 0)
+	    firstEpoch = epoch;
+	epochs = epoch;
+    }
+
+    // epochs -- Return the number of the last training epoch completed,
+    // counting any epochs before training was resumed.
+    public int epochs() {
+	return (epochs);
+    }
+
+    // sse -- Return the SSE of the last training epoch completed.
+    public double sse() {
+	return (lastSSE);
+    }
+
+    // sse -- Return the SSE of the given training epoch, or NaN if it is
+    // not among the SSE_HISTORY - 1 most recent epochs recorded here.
+    public double sse(int epoch) {
+	if ((epoch < 1) || (epoch < firstEpoch) || (epoch > epochs))
+	    return (Double.NaN);
+	double val = Double.longBitsToDouble
+	    (sseHistory.get(epoch % SSE_HISTORY));
+	// The slot is next written for epoch + SSE_HISTORY, which happens
+	// only after epoch + SSE_HISTORY - 1 has been published, so checking
+	// the epoch count after the read catches a replaced value ...
+	if (epoch <= epochs - (SSE_HISTORY - 1))
+	    return (Double.NaN);
+	return (val);
+    }
+
+    // patterns -- Return the number of training patterns processed in the
+    // epochs completed here, counting each pattern once per epoch.
+    public long patterns() {
+	return (patterns);
+    }
+
+    // forwardSeconds -- Return the estimated time spent propagating
+    // activation forward, in seconds.
+    public double forwardSeconds() {
+	return (forwardTime / 1.0e9);
+    }
+
+    // backwardSeconds -- Return the estimated time spent propagating error
+    // backward, in seconds.
+    public double backwardSeconds() {
+	return (backwardTime / 1.0e9);
+    }
+
+    // deltaSeconds -- Return the estimated time spent accumulating weight
+    // deltas, in seconds.
+    public double deltaSeconds() {
+	return (deltaTime / 1.0e9);
+    }
+
+    // updateSeconds -- Return the time spent updating weights, in
+    // seconds.
+    public double updateSeconds() {
+	return (totalUpdateTime / 1.0e9);
+    }
+
+    // epochSeconds -- Return the time spent in training epochs, in
+    // seconds, including time not spent in any of the phases, such as
+    // time spent loading patterns.
+    public double epochSeconds() {
+	return (epochTime / 1.0e9);
+    }
+
+    // lastEpochPatterns -- Return the number of patterns processed in the
+    // last epoch.
+    public long lastEpochPatterns() {
+	return (lastEpochPatterns);
+    }
+
+    // lastEpochSeconds -- Return the time taken by the last epoch, in
+    // seconds.
+    public double lastEpochSeconds() {
+	return (lastEpochTime / 1.0e9);
+    }
+
+    // patternsPerSecond -- Return the number of patterns processed per
+    // second of training, over all completed epochs, or zero if there
+    // have been none.
+    public double patternsPerSecond() {
+	long time = epochTime;
+	if (time <= 0)
+	    return (0.0);
+	return (patterns / (time / 1.0e9));
+    }
+
+    // allocatedBytes -- Return the number of bytes allocated during
+    // training epochs, or a negative value if this cannot be measured.
+    public long allocatedBytes() {
+	return (allocatedBytes);
+    }
+
+    // lastEpochBytes -- Return the number of bytes allocated during the
+    // last epoch, or a negative value if this cannot be measured.
+    public long lastEpochBytes() {
+	return (lastEpochBytes);
+    }
+
+    // percent -- Return the given time as a percentage of the total.
+    static double percent(long time, long total) {
+	if (total <= 0)
+	    return (0.0);
+	return (100.0 * time / total);
+    }
+
+    // summary -- Return a one-line summary of the metrics so far.
+    public String summary() {
+	long total = epochTime;
+	String line = String.format
+	    ("Epoch %d:  %.1f patterns/s, forward %.1f%%, backward %.1f%%, "
+	     + "deltas %.1f%%, update %.1f%%",
+	     epochs, patternsPerSecond(), percent(forwardTime, total),
+	     percent(backwardTime, total), percent(deltaTime, total),
+	     percent(totalUpdateTime, total));
+	if (lastEpochBytes >= 0)
+	    line = line + ", " + lastEpochBytes + " bytes allocated in last "
+		+ "epoch";
+	return (line + ".");
+    }
+
+
+}
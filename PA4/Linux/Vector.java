@@ -253,7 +253,13 @@ public class Vector {
     // randomize -- Replace the elements of this vector with random values
     // sampled uniformly from the given range.
     public void randomize(double min, double max) {
-	Random generator = new Random();
+	randomize(min, max, new Random());
+    }
+
+    // randomize -- Replace the elements of this vector with random values
+    // sampled uniformly from the given range, using the given random
+    // number generator.
+    public void randomize(double min, double max, Random generator) {
 	if (valid()) {
 	    for (int i = 0; i < n; i++)
 		el[i] = (generator.nextDouble() * (max - min)) + min;
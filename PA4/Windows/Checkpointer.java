@@ -0,0 +1,159 @@
+//
+// Checkpointer
+//
+// This class periodically saves the weights of a network while it is
+// being trained, every so many epochs, every so many seconds, or both.
+// Taking a checkpoint only copies the current weights into a snapshot
+// network of the same shape, which is cheap compared to writing them out.
+// The snapshot is then written to the checkpoint file, in the binary
+// weight format, on a background thread, so that training continues while
+// the file is being written.  A checkpoint that comes due while the
+// previous one is still being written is skipped, rather than making
+// training wait.  When the training process itself is given, rather than
+// just the network, each checkpoint also records the weight deltas and the
+// state of the training process, so that training can be resumed from it
+// with BP.readCheckpoint.  A checkpoint that cannot be written is
+// counted, so that the trainer can say so while training goes on.
+//
+
+
+public class Checkpointer {
+
+    BP bp;                    // the training process, if known
+    Network net;              // the network being trained
+    Network snapshot;         // copy of the weights being written
+    byte[] state;             // copy of the training state being written
+    String filename;          // the checkpoint file
+    int everyEpochs;          // epochs between checkpoints, or zero
+    long everyNanos;          // nanoseconds between checkpoints, or zero
+    int lastEpoch;            // epoch of the most recent checkpoint
+    long lastTime;            // time of the most recent checkpoint
+    Thread writer;            // thread writing the snapshot, if any
+    volatile boolean ok;      // did the most recent write succeed?
+    int written;              // number of checkpoints started
+    int skipped;              // number of checkpoints skipped
+    volatile int failed;      // number of checkpoints not written
+
+    // Constructor with the network, checkpoint file, and checkpoint
+    // frequency specified.  A frequency of zero means that checkpoints
+    // are not taken on that basis ...
+    public Checkpointer(Network net, String filename,
+			int everyEpochs, double everySeconds) {
+	this.bp = null;
+	this.net = net;
+	this.snapshot = null;
+	this.state = null;
+	this.filename = filename;
+	this.everyEpochs = everyEpochs;
+	this.everyNanos = (long) (everySeconds * 1.0e9);
+	this.lastEpoch = 0;
+	this.lastTime = System.nanoTime();
+	this.writer = null;
+	this.ok = true;
+	this.written = 0;
+	this.skipped = 0;
+	this.failed = 0;
+    }
+
+    // Constructor with the training process, checkpoint file, and
+    // checkpoint frequency specified, producing resumable checkpoints ...
+    public Checkpointer(BP bp, String filename,
+			int everyEpochs, double everySeconds) {
+	this(bp.net, filename, everyEpochs, everySeconds);
+	this.bp = bp;
+	this.lastEpoch = bp.epochs;
+    }
+
+    // due -- Return true if a checkpoint should be taken after the given
+    // training epoch.
+    public boolean due(int epoch) {
+	if ((everyEpochs > 0) && (epoch - lastEpoch >= everyEpochs))
+	    return (true);
+	if ((everyNanos > 0) && (System.nanoTime() - lastTime >= everyNanos))
+	    return (true);
+	return (false);
+    }
+
+    // epochDone -- Take a checkpoint if one is due after the given training
+    // epoch.  Return false if a checkpoint was due but had to be skipped.
+    public boolean epochDone(int epoch) {
+	if (due(epoch))
+	    return (checkpoint(epoch));
+	return (true);
+    }
+
+    // checkpoint -- Snapshot the weights now and start writing them in the
+    // background.  If the previous checkpoint is still being written, skip
+    // this one and return false.
+    public boolean checkpoint(int epoch) {
+	if ((writer != null) && writer.isAlive()) {
+	    skipped = skipped + 1;
+	    return (false);
+	}
+	// Copy the weights, reusing the snapshot network when possible ...
+	if ((snapshot == null) || (!(snapshot.copyWeights(net))))
+	    snapshot = new Network(net);
+	if (bp != null) {
+	    snapshot.copyWeightDeltas(net);
+	    state = bp.trainingState();
+	}
+	lastEpoch = epoch;
+	lastTime = System.nanoTime();
+	written = written + 1;
+	// Write the copy while training goes on ...
+	final int snapshotEpoch = epoch;
+	writer = new Thread(new Runnable() {
+		public void run() {
+		    TrainingEvents.WeightsSave event
+			= new TrainingEvents.WeightsSave();
+		    event.begin();
+		    ok = WeightFile.write(snapshot, filename, 
+					  (state != null), state);
+		    if (!(ok))
+			failed = failed + 1;
+		    if (event.shouldCommit()) {
+			event.file = filename;
+			event.epoch = snapshotEpoch;
+			event.succeeded = ok;
+			event.commit();
+		    }
+		}
+	    }, "Checkpointer");
+	writer.start();
+	return (true);
+    }
+
+    // finish -- Wait for any checkpoint being written to be completed.
+    // Return false if the most recent checkpoint could not be written.
+    public boolean finish() {
+	if (writer != null) {
+	    try {
+		writer.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		return (false);
+	    }
+	    writer = null;
+	}
+	return (ok);
+    }
+
+    // checkpointsWritten -- Return the number of checkpoints taken.
+    public int checkpointsWritten() {
+	return (written);
+    }
+
+    // checkpointsSkipped -- Return the number of checkpoints skipped
+    // because the previous one was still being written.
+    public int checkpointsSkipped() {
+	return (skipped);
+    }
+
+    // checkpointsFailed -- Return the number of checkpoints that could not
+    // be written.
+    public int checkpointsFailed() {
+	return (failed);
+    }
+
+
+}
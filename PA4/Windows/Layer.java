@@ -18,6 +18,7 @@ public class Layer {
     public Vector net;                    // net input levels of units
     public Vector act;                    // activation levels of units
     public Vector targ;                   // current target for output layers
+    Vector targStore;                     // own storage for copied targets
     public Vector delta;                  // unit delta values
     public Vector bias;                   // unit bias weights
     public Vector biasDelta;              // bias weight delta values
@@ -32,6 +33,7 @@ public class Layer {
 	this.net = null;
 	this.act = null;
 	this.targ = null;
+	this.targStore = null;
 	this.delta = null;
 	this.bias = null;
 	this.biasDelta = null;
@@ -48,6 +50,7 @@ public class Layer {
 	    this.net = new Vector(size);
 	    this.act = new Vector(size);
 	    this.targ = null;
+	    this.targStore = null;
 	    this.delta = new Vector(size);
 	    this.bias = new Vector(size);
 	    this.biasDelta = new Vector(size);
@@ -60,6 +63,7 @@ public class Layer {
 	    this.net = null;
 	    this.act = null;
 	    this.targ = null;
+	    this.targStore = null;
 	    this.delta = null;
 	    this.bias = null;
 	    this.biasDelta = null;
@@ -82,6 +86,7 @@ public class Layer {
 	    net = new Vector(size);
 	    act = new Vector(size);
 	    targ = null;
+	    targStore = null;
 	    delta = new Vector(size);
 	    bias = new Vector(size);
 	    biasDelta = new Vector(size);
@@ -92,6 +97,7 @@ public class Layer {
 	    net = null;
 	    act = null;
 	    targ = null;
+	    targStore = null;
 	    delta = null;
 	    bias = null;
 	    biasDelta = null;
@@ -157,6 +163,13 @@ public class Layer {
 	bias.randomize(min, max);
     }
 
+    // randomizeBiases -- Set the bias weights to random values sampled
+    // uniformly from the given range, using the given random number
+    // generator.
+    public void randomizeBiases(double min, double max, Random generator) {
+	bias.randomize(min, max, generator);
+    }
+
     // loadInput -- Load the given vector of values into the activation 
     // vector for this layer.  This allows this layer to act as an input
     // layer.  Return false on error.
@@ -171,6 +184,21 @@ public class Layer {
 	}
     }
 
+    // loadInput -- Load the values starting at the given offset in the
+    // given array into the activation vector for this layer, so that a
+    // pattern may be loaded straight from where a pattern set keeps it.
+    // Return false on error.
+    public boolean loadInput(double[] vals, int offset) {
+	if (act.valid() && (vals != null) && (offset >= 0) &&
+	    (offset <= vals.length - act.dim())) {
+	    System.arraycopy(vals, offset, act.el, 0, act.dim());
+	    return (true);
+	} else {
+	    // The values don't match ...
+	    return (false);
+	}
+    }
+
     // loadTarget -- Load the given vector of values into the target vector
     // for this layer.  Specifically, just direct the target reference for
     // this layer to the given vector, allocating no new storage.  This
@@ -185,6 +213,24 @@ public class Layer {
 	}
     }
 
+    // loadTarget -- Load the values starting at the given offset in the
+    // given array into the target vector for this layer.  The values are
+    // copied into storage kept by this layer, which is allocated only the
+    // first time.  Return false on error.
+    public boolean loadTarget(double[] vals, int offset) {
+	if (act.valid() && (vals != null) && (offset >= 0) &&
+	    (offset <= vals.length - act.dim())) {
+	    if (targStore == null)
+		targStore = new Vector(act.dim());
+	    System.arraycopy(vals, offset, targStore.el, 0, act.dim());
+	    targ = targStore;
+	    return (true);
+	} else {
+	    // The values don't match the layer ...
+	    return (false);
+	}
+    }
+
     // computeActivation -- Calculate the activation values of the units in
     // this layer based on their inputs and bias weights.
     public void computeActivation() {
@@ -215,7 +215,13 @@ public class Matrix {
     // randomize -- Replace the elements of this matrix with random values
     // sampled uniformly from the given range.
     public void randomize(double min, double max) {
-	Random generator = new Random();
+	randomize(min, max, new Random());
+    }
+
+    // randomize -- Replace the elements of this matrix with random values
+    // sampled uniformly from the given range, using the given random
+    // number generator.
+    public void randomize(double min, double max, Random generator) {
 	if (valid()) {
 	    for (int i = 0; i < rows; i++)
 		for (int j = 0; j < cols; j++)
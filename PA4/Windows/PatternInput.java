@@ -0,0 +1,198 @@
+//
+// PatternInput
+//
+// This class opens pattern files for reading, transparently decompressing
+// files that have been compressed with gzip.  Compression is detected by
+// the magic number at the start of the file, rather than by file name.
+// When there is more than one processor, decompression is done on a
+// separate thread, which hands the decoded bytes to the reader in chunks
+// of CHUNK_SIZE bytes through a bounded queue, so that decompression
+// overlaps with parsing and no decompressed copy of the file is ever
+// written to disk.  The reader is woken as soon as each chunk is ready,
+// and the decoder only waits when CHUNKS_AHEAD chunks are waiting to be
+// read.  With a single processor, the two could only take turns, so the
+// file is decompressed on the reading thread instead.
+//
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+
+public class PatternInput {
+
+    static final int GZIP_MAGIC = 0x1f8b;        // first two bytes of gzip
+    static final int ZSTD_MAGIC = 0x28b52ffd;    // first four bytes of zstd
+    static final int CHUNK_SIZE = 1 << 16;       // bytes handed over at once
+    static final int CHUNKS_AHEAD = 16;          // chunks decoded ahead
+    static final byte[] END = new byte[0];       // marks the end of the data
+
+    // DecodedInputStream -- The reading end of the queue from a decoder
+    // thread.  An error encountered by the decoder is reported to the
+    // reader when it reaches the end of the decoded data, so that a damaged
+    // file is not mistaken for a short one.  Closing the stream stops the
+    // decoder.
+    static class DecodedInputStream extends InputStream {
+	BlockingQueue<byte[]> chunks;      // decoded chunks, in order
+	byte[] chunk;                      // the chunk being read
+	int pos;                           // next byte to read in it
+	int limit;                         // bytes in it
+	Thread decoder;                    // the thread filling the queue
+	volatile IOException error;        // set if decoding failed
+
+	DecodedInputStream() {
+	    this.chunks = new ArrayBlockingQueue<byte[]>(CHUNKS_AHEAD);
+	    this.chunk = null;
+	    this.pos = 0;
+	    this.limit = 0;
+	    this.decoder = null;
+	    this.error = null;
+	}
+
+	// fill -- Make sure that there are bytes left in the current chunk,
+	// waiting for the next chunk if need be.  Return false at the end of
+	// the data.
+	boolean fill() throws IOException {
+	    while (pos >= limit) {
+		if (chunk == END)
+		    break;
+		try {
+		    chunk = chunks.take();
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    throw new InterruptedIOException();
+		}
+		pos = 0;
+		limit = chunk.length;
+	    }
+	    if (pos < limit)
+		return (true);
+	    if (error != null)
+		throw error;
+	    return (false);
+	}
+
+	public int read() throws IOException {
+	    if (!(fill()))
+		return (-1);
+	    int c = chunk[pos] & 0xff;
+	    pos = pos + 1;
+	    return (c);
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+	    if (len == 0)
+		return (0);
+	    if (!(fill()))
+		return (-1);
+	    int count = Math.min(len, limit - pos);
+	    System.arraycopy(chunk, pos, b, off, count);
+	    pos = pos + count;
+	    return (count);
+	}
+
+	public int available() {
+	    return (limit - pos);
+	}
+
+	public void close() {
+	    if (decoder != null) {
+		decoder.interrupt();
+		decoder = null;
+	    }
+	    chunks.clear();
+	    chunk = END;
+	    pos = 0;
+	    limit = 0;
+	}
+    }
+
+    // open -- Open the given pattern file, returning a buffered stream of
+    // its contents, decompressed if necessary.
+    public static BufferedInputStream open(File patsFile) throws IOException {
+	BufferedInputStream raw
+	    = new BufferedInputStream(new FileInputStream(patsFile));
+	int magic = peekMagic(raw);
+	if ((magic >>> 16) == GZIP_MAGIC) {
+	    InputStream decoded = new GZIPInputStream(raw, CHUNK_SIZE);
+	    if (Runtime.getRuntime().availableProcessors() > 1)
+		decoded = decode(decoded);
+	    return (new BufferedInputStream(decoded, CHUNK_SIZE));
+	} else if (magic == ZSTD_MAGIC) {
+	    // There is no zstd decoder in the standard library ...
+	    raw.close();
+	    throw new IOException("zstd compressed pattern files "
+				  + "are not supported");
+	} else {
+	    return (raw);
+	}
+    }
+
+    // peekMagic -- Return the first four bytes of the given stream as a
+    // big-endian integer, leaving the stream positioned where it was.
+    static int peekMagic(BufferedInputStream in) throws IOException {
+	in.mark(4);
+	int magic = 0;
+	for (int b = 0; b < 4; b++) {
+	    int c = in.read();
+	    if (c < 0)
+		break;
+	    magic = (magic << 8) | c;
+	}
+	in.reset();
+	return (magic);
+    }
+
+    // decode -- Start a thread reading the given decompressing stream
+    // into chunks, returning a stream of those chunks.
+    static InputStream decode(final InputStream compressed) {
+	final DecodedInputStream decoded = new DecodedInputStream();
+	final BlockingQueue<byte[]> chunks = decoded.chunks;
+	Thread decoder = new Thread(new Runnable() {
+		public void run() {
+		    try {
+			try {
+			    byte[] buf = new byte[CHUNK_SIZE];
+			    int count = 0;
+			    while (true) {
+				int n = compressed.read(buf, count,
+							CHUNK_SIZE - count);
+				if (n < 0)
+				    break;
+				count = count + n;
+				if (count == CHUNK_SIZE) {
+				    // Hand over a full chunk, waking the
+				    // reader ...
+				    chunks.put(buf);
+				    buf = new byte[CHUNK_SIZE];
+				    count = 0;
+				}
+			    }
+			    if (count > 0)
+				chunks.put(Arrays.copyOf(buf, count));
+			} catch (IOException e) {
+			    // Pass the error along to the reader ...
+			    decoded.error = e;
+			}
+			chunks.put(END);
+		    } catch (InterruptedException e) {
+			// The reader has closed the stream ...
+		    } finally {
+			try {
+			    compressed.close();
+			} catch (IOException e) {
+			    // Nothing more can be done ...
+			}
+		    }
+		}
+	    }, "PatternInput decoder");
+	decoder.setDaemon(true);
+	decoded.decoder = decoder;
+	decoder.start();
+	return (decoded);
+    }
+
+
+}
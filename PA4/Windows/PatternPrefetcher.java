@@ -0,0 +1,152 @@
+//
+// PatternPrefetcher
+//
+// This class reads blocks of patterns from a PatternStream on a separate
+// loader thread, so that the next block is being read from disk while
+// the current block is used for training.  A fixed number of block
+// buffers circulate between the loader and the consumer through two
+// bounded queues:  one of empty buffers and one of filled buffers.
+//
+
+
+import java.util.concurrent.*;
+
+
+public class PatternPrefetcher {
+
+    PatternStream stream;                // the source of the patterns
+    BlockingQueue<PatternSet> free;      // buffers waiting to be filled
+    BlockingQueue<PatternSet> full;      // buffers waiting to be used
+    PatternSet end;                      // marks the end of an epoch
+    Thread loader;                       // the thread filling buffers
+    volatile boolean failed;             // set if the loader hit an error
+    long waitNanos;                      // time spent waiting for data
+
+    // Constructor with the stream, block size, and number of block
+    // buffers specified.  Two buffers give double buffering ...
+    public PatternPrefetcher(PatternStream stream, int blockSize,
+			     int numBuffers) {
+	this.stream = stream;
+	this.free = new ArrayBlockingQueue<PatternSet>(numBuffers);
+	this.full = new ArrayBlockingQueue<PatternSet>(numBuffers + 1);
+	for (int b = 0; b < numBuffers; b++)
+	    this.free.add(new PatternSet(stream.inputN, stream.outputN,
+					 blockSize));
+	this.end = new PatternSet();
+	this.loader = null;
+	this.failed = false;
+	this.waitNanos = 0;
+    }
+
+    // startEpoch -- Start a loader thread reading the patterns from the
+    // beginning of the stream.  Every block handed out during the previous
+    // epoch must have been released.  Return false on error.
+    public boolean startEpoch() {
+	if (loader != null)
+	    close();
+	failed = false;
+	if (!(stream.rewind()))
+	    return (false);
+	loader = new Thread(new Runnable() {
+		public void run() {
+		    load();
+		}
+	    }, "PatternPrefetcher");
+	loader.setDaemon(true);
+	loader.start();
+	return (true);
+    }
+
+    // load -- Fill free buffers from the stream, queueing them for use,
+    // until the stream is exhausted.  Always finish by queueing the end
+    // marker, so that the consumer never waits forever.
+    void load() {
+	PatternSet block = null;
+	try {
+	    int count;
+	    do {
+		block = free.take();
+		TrainingEvents.PatternsLoad event
+		    = new TrainingEvents.PatternsLoad();
+		event.begin();
+		count = stream.readBlock(block);
+		if (event.shouldCommit() && (count != 0)) {
+		    event.file = stream.filename;
+		    event.purpose = "training block";
+		    event.patterns = Math.max(0, count);
+		    event.succeeded = (count > 0);
+		    event.commit();
+		}
+		if (count > 0)
+		    full.put(block);
+		else
+		    free.put(block);
+		block = null;
+	    } while (count > 0);
+	    if (count < 0)
+		failed = true;
+	    stream.close();
+	    full.put(end);
+	} catch (InterruptedException e) {
+	    // The epoch was abandoned, so return any buffer in hand ...
+	    if (block != null)
+		free.add(block);
+	    stream.close();
+	}
+    }
+
+    // nextBlock -- Return the next block of patterns, waiting for it to be
+    // read if necessary.  Return null at the end of the epoch or on error.
+    public PatternSet nextBlock() {
+	long start = System.nanoTime();
+	try {
+	    PatternSet block = full.take();
+	    waitNanos = waitNanos + (System.nanoTime() - start);
+	    if (block == end)
+		return (null);
+	    return (block);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    failed = true;
+	    return (null);
+	}
+    }
+
+    // releaseBlock -- Hand the given block back to the loader for reuse.
+    public void releaseBlock(PatternSet block) {
+	free.add(block);
+    }
+
+    // failed -- Return true if the most recent epoch could not be read in
+    // its entirety.
+    public boolean failed() {
+	return (failed);
+    }
+
+    // waitSeconds -- Return the total time, in seconds, that the consumer
+    // has spent waiting for blocks of patterns to be read.
+    public double waitSeconds() {
+	return (waitNanos / 1.0e9);
+    }
+
+    // close -- Stop the loader thread, if it is running, returning any
+    // queued blocks to the pool of free buffers.
+    public void close() {
+	if (loader != null) {
+	    loader.interrupt();
+	    try {
+		loader.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    loader = null;
+	}
+	PatternSet block;
+	while ((block = full.poll()) != null) {
+	    if (block != end)
+		free.add(block);
+	}
+    }
+
+
+}
@@ -0,0 +1,142 @@
+//
+// PredictionCache
+//
+// This class remembers the output vectors that a model has computed for
+// recent input vectors, so that an input vector that has been seen before
+// need not be propagated through the model again.  This pays off when
+// inputs repeat exactly, as they do when every input is binary or
+// categorical.  Input vectors are found by their hash codes and then
+// compared element by element, bit for bit, so a cached output is only
+// ever returned for exactly the same input.  The cache holds a fixed
+// number of entries, evicting the least recently used entry when it is
+// full.  It is built on an InferenceModel, which never changes, so its
+// entries never go out of date, and it may be shared by any number of
+// threads.  The cache keeps its own copies of every input and output.
+//
+
+
+import java.util.*;
+
+
+public class PredictionCache {
+
+    // Key -- A copy of an input vector, used to find its output.
+    static class Key {
+	double[] vals;
+	int hash;
+
+	Key(double[] src, int offset, int n) {
+	    this.vals = Arrays.copyOfRange(src, offset, offset + n);
+	    this.hash = Arrays.hashCode(vals);
+	}
+
+	public boolean equals(Object obj) {
+	    return ((obj instanceof Key) &&
+		    Arrays.equals(vals, ((Key) obj).vals));
+	}
+
+	public int hashCode() {
+	    return (hash);
+	}
+    }
+
+    InferenceModel model;         // the model computing outputs
+    int maxEntries;               // largest number of entries kept
+    LinkedHashMap<Key, double[]> entries;  // outputs, by input, oldest first
+    long hits;                    // number of lookups answered by the cache
+    long misses;                  // number of lookups not answered
+    long evictions;               // number of entries evicted to make room
+
+    // Constructor with the model and the largest number of entries to keep
+    // specified ...
+    public PredictionCache(InferenceModel model, int maxEntries) {
+	this.model = model;
+	this.maxEntries = Math.max(1, maxEntries);
+	// Access order makes the first entry the least recently used ...
+	this.entries = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Key,
+						    double[]> eldest) {
+		    if (size() > PredictionCache.this.maxEntries) {
+			evictions = evictions + 1;
+			return (true);
+		    }
+		    return (false);
+		}
+	    };
+	this.hits = 0;
+	this.misses = 0;
+	this.evictions = 0;
+    }
+
+    // lookup -- If the output vector for the input vector starting at the
+    // given offset in the input array is in the cache, copy it to the
+    // given offset in the output array and return true.  Otherwise,
+    // return false.
+    public synchronized boolean lookup(double[] in, int inOffset,
+				       double[] out, int outOffset) {
+	double[] output = entries.get(new Key(in, inOffset, model.inputN));
+	if (output == null) {
+	    misses = misses + 1;
+	    return (false);
+	}
+	hits = hits + 1;
+	System.arraycopy(output, 0, out, outOffset, model.outputN);
+	return (true);
+    }
+
+    // store -- Remember the output vector starting at the given offset in
+    // the output array as the output for the input vector starting at the
+    // given offset in the input array.
+    public synchronized void store(double[] in, int inOffset,
+				   double[] out, int outOffset) {
+	entries.put(new Key(in, inOffset, model.inputN),
+		    Arrays.copyOfRange(out, outOffset,
+				       outOffset + model.outputN));
+    }
+
+    // predict -- Compute the output vector for the given input vector,
+    // placing it in the given output array, from the cache if possible, or
+    // by passing it through the model otherwise, using the given scratch
+    // array, obtained from the model's "newScratch".
+    public void predict(double[] in, double[] out, double[] scratch) {
+	if (!(lookup(in, 0, out, 0))) {
+	    model.predict(in, 0, out, 0, scratch);
+	    store(in, 0, out, 0);
+	}
+    }
+
+    // clear -- Discard all entries.
+    public synchronized void clear() {
+	entries.clear();
+    }
+
+    // size -- Return the number of entries in the cache.
+    public synchronized int size() {
+	return (entries.size());
+    }
+
+    // hits -- Return the number of lookups answered by the cache.
+    public synchronized long hits() {
+	return (hits);
+    }
+
+    // hitRate -- Return the fraction of lookups answered by the cache, or
+    // zero if there have been no lookups.
+    public synchronized double hitRate() {
+	long lookups = hits + misses;
+	if (lookups == 0)
+	    return (0.0);
+	return ((double) hits / lookups);
+    }
+
+    // report -- Return a one-line summary of the cache's performance.
+    public synchronized String report() {
+	return (String.format("Cache entries = %d of %d, hits = %d, "
+			      + "misses = %d, hit rate = %.3f, "
+			      + "evictions = %d.",
+			      entries.size(), maxEntries, hits, misses,
+			      hitRate(), evictions));
+    }
+
+
+}
@@ -0,0 +1,79 @@
+//
+// PredictionClient
+//
+// This class connects to a PredictionServer on the same host and asks it
+// for the outputs of its model, one input vector at a time.
+//
+
+
+import java.io.*;
+import java.net.*;
+
+
+public class PredictionClient {
+
+    Socket socket;            // the connection to the server
+    DataInputStream in;       // replies from the server
+    DataOutputStream out;     // requests to the server
+
+    // Default constructor ...
+    public PredictionClient() {
+	this.socket = null;
+	this.in = null;
+	this.out = null;
+    }
+
+    // connect -- Connect to the server listening on the given port of the
+    // loopback address.  Return false on error.
+    public boolean connect(int port) {
+	try {
+	    socket = new Socket(InetAddress.getLoopbackAddress(), port);
+	    socket.setTcpNoDelay(true);
+	    in = new DataInputStream
+		(new BufferedInputStream(socket.getInputStream()));
+	    out = new DataOutputStream
+		(new BufferedOutputStream(socket.getOutputStream()));
+	    return (true);
+	} catch (IOException e) {
+	    // The server is not there ...
+	    close();
+	    return (false);
+	}
+    }
+
+    // predict -- Return the output vector computed by the server for the
+    // given input vector, or null on error.
+    public double[] predict(double[] input) {
+	try {
+	    out.writeInt(input.length);
+	    for (int i = 0; i < input.length; i++)
+		out.writeDouble(input[i]);
+	    out.flush();
+	    int count = in.readInt();
+	    if (count < 0)
+		return (null);
+	    double[] output = new double[count];
+	    for (int i = 0; i < count; i++)
+		output[i] = in.readDouble();
+	    return (output);
+	} catch (IOException e) {
+	    // The connection has failed ...
+	    return (null);
+	}
+    }
+
+    // close -- Close the connection to the server.
+    public void close() {
+	try {
+	    if (socket != null)
+		socket.close();
+	} catch (IOException e) {
+	    // Nothing more can be done ...
+	}
+	socket = null;
+	in = null;
+	out = null;
+    }
+
+
+}
@@ -0,0 +1,158 @@
+//
+// PredictionLoadTest
+//
+// This class measures how a PredictionServer copes with many connections
+// at once.  For each of a list of connection counts, it starts a server
+// for the model in a binary weight file, opens that many connections to
+// it, and has a small number of client threads send requests over all of
+// the connections in turn for a while, so that most connections are idle
+// at any moment, as they are when many separate processes share a server.
+// It then reports the request rate, the latencies seen by the clients,
+// the server's own summary, and the number of threads in the process.
+//
+
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+
+public class PredictionLoadTest {
+
+    // main -- Run the load test.  Connection counts are given separated
+    // by commas, as in "10,100,1000".
+    public static void main(String[] args) {
+	if (args.length < 2) {
+	    System.err.println("Usage:  java PredictionLoadTest WEIGHTS "
+			       + "CONNECTIONS[,CONNECTIONS...] "
+			       + "[SECONDS [CLIENT-THREADS]]");
+	    return;
+	}
+	InferenceModel model = InferenceModel.readWeights(args[0]);
+	if (model == null) {
+	    System.err.println("Unable to read weight file.");
+	    return;
+	}
+	double seconds = (args.length > 2) ? Double.parseDouble(args[2]) : 5.0;
+	int clientThreads = (args.length > 3) ? Integer.parseInt(args[3]) : 8;
+	for (String count : args[1].split(",")) {
+	    if (!(run(model, Integer.parseInt(count.trim()), seconds,
+		      clientThreads)))
+		return;
+	}
+    }
+
+    // run -- Test the given model with the given number of connections,
+    // for the given number of seconds, printing a report.  Return false if
+    // the server could not be started or the connections could not be
+    // opened.
+    static boolean run(InferenceModel model, int numConnections,
+		       double seconds, int clientThreads) {
+	PredictionServer server = new PredictionServer(model, 32, 1.0);
+	if (!(server.start(0))) {
+	    System.err.println("Unable to start server.");
+	    return (false);
+	}
+	// Open all of the connections before sending anything ...
+	final PredictionClient[] clients = new PredictionClient[numConnections];
+	for (int c = 0; c < numConnections; c++) {
+	    clients[c] = new PredictionClient();
+	    if (!(clients[c].connect(server.port()))) {
+		System.err.println("Unable to open connection " + (c + 1) + ".");
+		for (int d = 0; d < c; d++)
+		    clients[d].close();
+		server.stop();
+		return (false);
+	    }
+	}
+	// Have each client thread cycle through its share of the
+	// connections until time is up ...
+	final long deadline = System.nanoTime() + (long) (seconds * 1.0e9);
+	final int inputN = model.inputN;
+	final int numThreads = Math.max(1, Math.min(clientThreads,
+						    numConnections));
+	final long[][] latencies = new long[numThreads][];
+	final int[] counts = new int[numThreads];
+	final AtomicInteger errors = new AtomicInteger();
+	Thread[] threads = new Thread[numThreads];
+	for (int t = 0; t < numThreads; t++) {
+	    final int id = t;
+	    threads[t] = new Thread(new Runnable() {
+		    public void run() {
+			Random generator = new Random(id);
+			double[] input = new double[inputN];
+			long[] lat = new long[1024];
+			int n = 0;
+			int c = id;
+			while (System.nanoTime() < deadline) {
+			    for (int i = 0; i < inputN; i++)
+				input[i] = generator.nextDouble();
+			    long start = System.nanoTime();
+			    if (clients[c].predict(input) == null)
+				errors.incrementAndGet();
+			    if (n == lat.length)
+				lat = Arrays.copyOf(lat, 2 * n);
+			    lat[n] = System.nanoTime() - start;
+			    n = n + 1;
+			    c = c + numThreads;
+			    if (c >= clients.length)
+				c = id;
+			}
+			latencies[id] = lat;
+			counts[id] = n;
+		    }
+		}, "PredictionLoadTest client " + t);
+	    threads[t].start();
+	}
+	int peakThreads = 0;
+	ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	try {
+	    for (Thread thread : threads) {
+		while (thread.isAlive()) {
+		    peakThreads = Math.max(peakThreads,
+					   threadBean.getThreadCount());
+		    thread.join(100);
+		}
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	// Gather the latencies of all of the requests ...
+	int total = 0;
+	for (int t = 0; t < numThreads; t++)
+	    total = total + counts[t];
+	long[] all = new long[total];
+	int k = 0;
+	for (int t = 0; t < numThreads; t++) {
+	    System.arraycopy(latencies[t], 0, all, k, counts[t]);
+	    k = k + counts[t];
+	}
+	Arrays.sort(all);
+	System.out.println(String.format
+			   ("Connections = %d, requests = %d, errors = %d, "
+			    + "rate = %.1f requests/s, p50 = %.3f ms, "
+			    + "p99 = %.3f ms, threads = %d%s.",
+			    numConnections, total, errors.get(),
+			    total / seconds, percentile(all, 50.0),
+			    percentile(all, 99.0), peakThreads,
+			    (server.usesVirtualThreads()
+			     ? " (virtual threads)" : "")));
+	System.out.println("  Server:  " + server.report());
+	for (PredictionClient client : clients)
+	    client.close();
+	server.stop();
+	return (true);
+    }
+
+    // percentile -- Return the given percentile (between 0 and 100) of the
+    // given sorted latencies, in milliseconds, or zero if there are none.
+    static double percentile(long[] sorted, double percentile) {
+	if (sorted.length == 0)
+	    return (0.0);
+	int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+	index = Math.max(0, Math.min(sorted.length - 1, index));
+	return (sorted[index] / 1.0e6);
+    }
+
+
+}
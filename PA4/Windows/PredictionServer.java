@@ -0,0 +1,515 @@
+//
+// PredictionServer
+//
+// This class serves the outputs of a trained model to other processes on
+// the same host, over TCP connections to the loopback address.  Requests
+// that arrive at about the same time, on any connections, are gathered
+// into a micro-batch, which grows until it reaches a maximum size or until
+// its oldest request has waited a maximum time, and the whole batch is
+// then passed through the model at once.  The server keeps track of
+// request latencies and throughput.
+//
+// Connections spend nearly all of their time idle, so each connection is
+// handled by a virtual thread of its own, when the Java runtime provides
+// them (Java 21 and later), allowing tens of thousands of connections
+// without tens of thousands of operating system threads.  On earlier
+// runtimes, a thread pool stands in for them.  A single batching thread
+// gathers requests from the queue into batches, and hands each whole
+// batch to one of a fixed number of ordinary worker threads, each with
+// its own buffers for activation values.  The batching thread only starts
+// a batch once a worker is free to compute it, so that requests arriving
+// while every worker is busy are gathered into the next batch rather than
+// split among workers.  If computing a batch fails, every request in it
+// gets an error reply.  When a PredictionCache is in use, a request whose
+// input has been seen recently is answered from the cache at once,
+// without joining a batch.
+//
+// Each request consists of an int count followed by that many doubles,
+// giving the input vector.  Each reply consists of an int count followed
+// by that many doubles, giving the output vector.  A request with the
+// wrong number of values, or one whose batch could not be computed, gets
+// a reply with a count of -1 and no values.
+// Values are big-endian, as written by DataOutputStream.  Any number of
+// requests may be sent, one after another, on a single connection.
+//
+
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+public class PredictionServer {
+
+    static final int LATENCY_SAMPLES = 1 << 16;  // latencies remembered
+
+    // Request -- A single input vector waiting for its output vector.
+    static class Request {
+	double[] input;
+	double[] output;
+	long arrival;
+	boolean failed;
+	CountDownLatch done;
+
+	Request(int inputN, int outputN) {
+	    this.input = new double[inputN];
+	    this.output = new double[outputN];
+	    this.arrival = 0;
+	    this.failed = false;
+	    this.done = null;
+	}
+    }
+
+    // Batch -- A batch of requests, along with the buffers used to compute
+    // it.  There is one batch for each worker thread, which is reused.
+    static class Batch {
+	List<Request> requests;
+	double[] in;
+	double[] out;
+	double[] scratch;
+
+	Batch(InferenceModel model, int maxBatch) {
+	    this.requests = new ArrayList<Request>(maxBatch);
+	    this.in = new double[maxBatch * model.inputN];
+	    this.out = new double[maxBatch * model.outputN];
+	    this.scratch = model.newBatchScratch(maxBatch);
+	}
+    }
+
+    InferenceModel model;           // the model being served
+    int maxBatch;                   // largest number of requests per batch
+    long maxWaitNanos;              // longest wait for a batch to fill
+    ServerSocket serverSocket;      // listens for new connections
+    Set<Socket> connections;        // connections currently open
+    BlockingQueue<Request> queue;   // requests waiting to be batched
+    ExecutorService handlers;       // threads handling connections
+    boolean virtualThreads;         // are the handlers virtual threads?
+    Thread acceptor;                // thread accepting connections
+    Thread batcher;                 // thread gathering batches
+    int numWorkers;                 // number of worker threads
+    ExecutorService workers;        // threads computing batches
+    BlockingQueue<Batch> idle;      // batches free to be filled
+    PredictionCache cache;          // outputs of recent inputs, or null
+    volatile boolean running;       // is the server running?
+    long[] latencies;               // most recent request latencies
+    long served;                    // number of requests served
+    long batches;                   // number of batches computed
+    long startTime;                 // time at which the server started
+
+    // Constructor with the model, batching limits, and number of worker
+    // threads specified ...
+    public PredictionServer(InferenceModel model, int maxBatch,
+			    double maxWaitMillis, int numWorkers) {
+	this.model = model;
+	this.maxBatch = Math.max(1, maxBatch);
+	this.maxWaitNanos = (long) (maxWaitMillis * 1.0e6);
+	this.serverSocket = null;
+	this.connections = Collections.newSetFromMap
+	    (new ConcurrentHashMap<Socket, Boolean>());
+	this.queue = new LinkedBlockingQueue<Request>();
+	this.handlers = null;
+	this.virtualThreads = false;
+	this.acceptor = null;
+	this.batcher = null;
+	this.numWorkers = Math.max(1, numWorkers);
+	this.workers = null;
+	this.idle = new ArrayBlockingQueue<Batch>(this.numWorkers);
+	this.cache = null;
+	this.running = false;
+	this.latencies = new long[LATENCY_SAMPLES];
+	this.served = 0;
+	this.batches = 0;
+	this.startTime = 0;
+    }
+
+    // Constructor with the model and batching limits specified, using one
+    // worker thread per processor ...
+    public PredictionServer(InferenceModel model, int maxBatch,
+			    double maxWaitMillis) {
+	this(model, maxBatch, maxWaitMillis,
+	     Runtime.getRuntime().availableProcessors());
+    }
+
+    // newHandlerExecutor -- Return an executor that runs each task on a
+    // virtual thread of its own, if the Java runtime supports virtual
+    // threads, or on a pooled ordinary thread, otherwise.  Reflection is
+    // used so that the server still runs on runtimes without virtual
+    // threads.
+    ExecutorService newHandlerExecutor() {
+	try {
+	    Object executor = Executors.class
+		.getMethod("newVirtualThreadPerTaskExecutor")
+		.invoke(null);
+	    virtualThreads = true;
+	    return ((ExecutorService) executor);
+	} catch (ReflectiveOperationException e) {
+	    // There are no virtual threads, so use ordinary ones ...
+	    virtualThreads = false;
+	    return (Executors.newCachedThreadPool(new ThreadFactory() {
+		    public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "PredictionServer connection");
+			t.setDaemon(true);
+			return (t);
+		    }
+		}));
+	}
+    }
+
+    // useCache -- Answer repeated inputs from a cache holding the outputs
+    // of at most the given number of recent inputs, or from no cache if
+    // the number is zero.  This must be called before the server starts.
+    public void useCache(int maxEntries) {
+	cache = (maxEntries > 0) ? new PredictionCache(model, maxEntries)
+	    : null;
+    }
+
+    // cache -- Return the cache of recent outputs, or null if none.
+    public PredictionCache cache() {
+	return (cache);
+    }
+
+    // usesVirtualThreads -- Return true if connections are being handled
+    // by virtual threads.
+    public boolean usesVirtualThreads() {
+	return (virtualThreads);
+    }
+
+    // start -- Start listening on the given port of the loopback address,
+    // or on any free port if the given port is zero.  Return false on
+    // error.
+    public boolean start(int port) {
+	try {
+	    serverSocket = new ServerSocket(port, 128,
+					    InetAddress.getLoopbackAddress());
+	} catch (IOException e) {
+	    // The port may be taken ...
+	    return (false);
+	}
+	running = true;
+	startTime = System.nanoTime();
+	handlers = newHandlerExecutor();
+	workers = Executors.newFixedThreadPool
+	    (numWorkers, new ThreadFactory() {
+		    public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "PredictionServer worker");
+			t.setDaemon(true);
+			return (t);
+		    }
+		});
+	idle.clear();
+	for (int w = 0; w < numWorkers; w++)
+	    idle.add(new Batch(model, maxBatch));
+	batcher = new Thread(new Runnable() {
+		public void run() {
+		    gatherBatches();
+		}
+	    }, "PredictionServer batcher");
+	batcher.setDaemon(true);
+	batcher.start();
+	acceptor = new Thread(new Runnable() {
+		public void run() {
+		    acceptConnections();
+		}
+	    }, "PredictionServer acceptor");
+	acceptor.setDaemon(true);
+	acceptor.start();
+	return (true);
+    }
+
+    // port -- Return the port on which the server is listening, or a
+    // negative value if it is not running.
+    public int port() {
+	if (serverSocket == null)
+	    return (-1);
+	return (serverSocket.getLocalPort());
+    }
+
+    // stop -- Stop the server, closing all connections.
+    public void stop() {
+	running = false;
+	try {
+	    if (serverSocket != null)
+		serverSocket.close();
+	} catch (IOException e) {
+	    // Nothing more can be done ...
+	}
+	for (Socket socket : connections) {
+	    try {
+		socket.close();
+	    } catch (IOException e) {
+		// Nothing more can be done ...
+	    }
+	}
+	if (handlers != null)
+	    handlers.shutdownNow();
+	try {
+	    if (acceptor != null)
+		acceptor.join();
+	    if (batcher != null)
+		batcher.join();
+	    if (workers != null) {
+		workers.shutdown();
+		workers.awaitTermination(1, TimeUnit.MINUTES);
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    // acceptConnections -- Accept connections until the server is stopped,
+    // handling each connection on a thread of its own.
+    void acceptConnections() {
+	while (running) {
+	    try {
+		final Socket socket = serverSocket.accept();
+		connections.add(socket);
+		handlers.execute(new Runnable() {
+			public void run() {
+			    serve(socket);
+			}
+		    });
+	    } catch (IOException e) {
+		// The server socket has been closed ...
+	    } catch (RejectedExecutionException e) {
+		// The server is stopping ...
+	    }
+	}
+    }
+
+    // serve -- Answer requests on the given connection until it is closed.
+    void serve(Socket socket) {
+	try {
+	    socket.setTcpNoDelay(true);
+	    DataInputStream in = new DataInputStream
+		(new BufferedInputStream(socket.getInputStream()));
+	    DataOutputStream out = new DataOutputStream
+		(new BufferedOutputStream(socket.getOutputStream()));
+	    Request req = new Request(model.inputN, model.outputN);
+	    while (running) {
+		int count = in.readInt();
+		if (count != model.inputN) {
+		    // Discard the mismatched request ...
+		    if (count < 0)
+			break;
+		    for (int i = 0; i < count; i++)
+			in.readDouble();
+		    out.writeInt(-1);
+		    out.flush();
+		    continue;
+		}
+		for (int i = 0; i < count; i++)
+		    req.input[i] = in.readDouble();
+		req.arrival = System.nanoTime();
+		req.failed = false;
+		if ((cache == null) ||
+		    (!(cache.lookup(req.input, 0, req.output, 0)))) {
+		    // Wait for the request to be computed in some batch ...
+		    req.done = new CountDownLatch(1);
+		    queue.put(req);
+		    req.done.await();
+		}
+		if (req.failed) {
+		    out.writeInt(-1);
+		    out.flush();
+		    continue;
+		}
+		out.writeInt(model.outputN);
+		for (int i = 0; i < model.outputN; i++)
+		    out.writeDouble(req.output[i]);
+		out.flush();
+		recordLatency(System.nanoTime() - req.arrival);
+	    }
+	} catch (IOException e) {
+	    // The client has gone away ...
+	} catch (InterruptedException e) {
+	    // The server is stopping ...
+	} finally {
+	    connections.remove(socket);
+	    try {
+		socket.close();
+	    } catch (IOException e) {
+		// Nothing more can be done ...
+	    }
+	}
+    }
+
+    // gatherBatches -- Gather waiting requests into batches, handing each
+    // batch to a worker thread, until the server is stopped.  A batch is
+    // only started once a worker is free.
+    void gatherBatches() {
+	try {
+	    while (running) {
+		Batch batch = idle.take();
+		Request first = null;
+		while (running && (first == null))
+		    first = queue.poll(100, TimeUnit.MILLISECONDS);
+		if (first == null) {
+		    idle.put(batch);
+		    continue;
+		}
+		// Let the batch fill until it is full or the first request
+		// has waited long enough ...
+		batch.requests.clear();
+		batch.requests.add(first);
+		long deadline = first.arrival + maxWaitNanos;
+		while (batch.requests.size() < maxBatch) {
+		    long remaining = deadline - System.nanoTime();
+		    Request next = (remaining > 0)
+			? queue.poll(remaining, TimeUnit.NANOSECONDS)
+			: queue.poll();
+		    if (next == null)
+			break;
+		    batch.requests.add(next);
+		}
+		final Batch full = batch;
+		try {
+		    workers.execute(new Runnable() {
+			    public void run() {
+				computeBatch(full);
+			    }
+			});
+		} catch (RejectedExecutionException e) {
+		    // The server is stopping ...
+		    finishBatch(batch, false);
+		}
+	    }
+	} catch (InterruptedException e) {
+	    // The server is stopping ...
+	}
+    }
+
+    // computeBatch -- Compute the outputs for every request in the given
+    // batch at once, and answer them, then free the batch for reuse.  If
+    // the computation fails, every request gets an error reply instead.
+    void computeBatch(Batch batch) {
+	boolean ok = false;
+	try {
+	    int count = batch.requests.size();
+	    for (int b = 0; b < count; b++)
+		System.arraycopy(batch.requests.get(b).input, 0,
+				 batch.in, b * model.inputN, model.inputN);
+	    model.predictBatch(batch.in, batch.out, count, batch.scratch);
+	    for (int b = 0; b < count; b++)
+		System.arraycopy(batch.out, b * model.outputN,
+				 batch.requests.get(b).output, 0,
+				 model.outputN);
+	    if (cache != null)
+		for (int b = 0; b < count; b++)
+		    cache.store(batch.in, b * model.inputN,
+				batch.out, b * model.outputN);
+	    ok = true;
+	} finally {
+	    finishBatch(batch, ok);
+	}
+    }
+
+    // finishBatch -- Answer every request in the given batch, with its
+    // output if the batch was computed, or with an error otherwise, and
+    // free the batch for reuse.
+    void finishBatch(Batch batch, boolean ok) {
+	for (Request req : batch.requests) {
+	    req.failed = !(ok);
+	    req.done.countDown();
+	}
+	batch.requests.clear();
+	if (ok)
+	    recordBatch();
+	idle.add(batch);
+    }
+
+    // recordBatch -- Count a computed batch.
+    synchronized void recordBatch() {
+	batches = batches + 1;
+    }
+
+    // recordLatency -- Remember the latency of a request, in nanoseconds.
+    synchronized void recordLatency(long nanos) {
+	latencies[(int) (served % LATENCY_SAMPLES)] = nanos;
+	served = served + 1;
+    }
+
+    // latencyPercentile -- Return the given percentile (between 0 and 100)
+    // of the most recent request latencies, in milliseconds, or zero if no
+    // requests have been served.
+    public synchronized double latencyPercentile(double percentile) {
+	int count = (int) Math.min(served, LATENCY_SAMPLES);
+	if (count == 0)
+	    return (0.0);
+	long[] sorted = Arrays.copyOf(latencies, count);
+	Arrays.sort(sorted);
+	int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+	index = Math.max(0, Math.min(count - 1, index));
+	return (sorted[index] / 1.0e6);
+    }
+
+    // throughput -- Return the number of requests served per second since
+    // the server started.
+    public synchronized double throughput() {
+	double seconds = (System.nanoTime() - startTime) / 1.0e9;
+	if (seconds <= 0.0)
+	    return (0.0);
+	return (served / seconds);
+    }
+
+    // report -- Return a one-line summary of the server's performance.
+    public synchronized String report() {
+	// Requests answered from the cache were never in a batch ...
+	long batched = served - ((cache != null) ? cache.hits() : 0);
+	double meanBatch = (batches > 0) ? ((double) batched / batches) : 0.0;
+	return (String.format("Requests = %d, batches = %d, "
+			      + "mean batch size = %.2f, "
+			      + "throughput = %.1f requests/s, "
+			      + "p50 latency = %.3f ms, "
+			      + "p99 latency = %.3f ms.",
+			      served, batches, meanBatch, throughput(),
+			      latencyPercentile(50.0),
+			      latencyPercentile(99.0)));
+    }
+
+    // main -- Serve the model in the given binary weight file on the given
+    // port, reporting on performance every ten seconds.  The maximum
+    // batch size, the maximum wait, in milliseconds, the number of worker
+    // threads, and the number of recent outputs to cache (zero, the
+    // default, for none) may also be given.
+    public static void main(String[] args) {
+	if (args.length < 2) {
+	    System.err.println("Usage:  java PredictionServer WEIGHTS PORT "
+			       + "[MAX-BATCH [MAX-WAIT-MS [WORKERS "
+			       + "[CACHE-ENTRIES]]]]");
+	    return;
+	}
+	InferenceModel model = InferenceModel.readWeights(args[0]);
+	if (model == null) {
+	    System.err.println("Unable to read weight file.");
+	    return;
+	}
+	int maxBatch = (args.length > 2) ? Integer.parseInt(args[2]) : 32;
+	double maxWait = (args.length > 3) ? Double.parseDouble(args[3]) : 1.0;
+	int numWorkers = (args.length > 4) ? Integer.parseInt(args[4])
+	    : Runtime.getRuntime().availableProcessors();
+	int cacheEntries = (args.length > 5) ? Integer.parseInt(args[5]) : 0;
+	PredictionServer server = new PredictionServer(model, maxBatch,
+							maxWait, numWorkers);
+	server.useCache(cacheEntries);
+	if (!(server.start(Integer.parseInt(args[1])))) {
+	    System.err.println("Unable to start server.");
+	    return;
+	}
+	System.out.println("Serving on port " + server.port()
+			   + (server.usesVirtualThreads()
+			    ? ", using virtual threads." : "."));
+	try {
+	    while (true) {
+		Thread.sleep(10000);
+		System.out.println(server.report());
+		if (server.cache() != null)
+		    System.out.println(server.cache().report());
+	    }
+	} catch (InterruptedException e) {
+	    server.stop();
+	}
+    }
+
+
+}
@@ -7,6 +7,9 @@
 //
 
 
+import java.util.*;
+
+
 public class Projection {
     
     public int inputN;                  // number of units on the input side
@@ -92,6 +95,13 @@ public class Projection {
 	W.randomize(min, max);
     }
 
+    // randomizeWeights -- Set the weights to random values sampled
+    // uniformly from the given range, using the given random number
+    // generator.
+    public void randomizeWeights(double min, double max, Random generator) {
+	W.randomize(min, max, generator);
+    }
+
     // incrementWeightDeltas -- Update how much the weights should
     // change, as a function of the current unit delta values.  Note that
     // this increments the current weight delta values, allowing multiple 
@@ -0,0 +1,263 @@
+//
+// Scorer
+//
+// This class computes the outputs of a trained network for every input
+// vector in a file, without any need for target vectors, and writes them
+// to an output file, one line per input vector, in the order of the
+// inputs.  The network is read from a weight file in the binary format,
+// which records its topology.  The inputs may be in any pattern file that
+// PatternStream can read; any target vectors in the file are ignored.
+// Inputs are read a block at a time, and the blocks are passed through
+// the network on all processors at once, with only a fixed number of
+// blocks in memory at any time, so files of any size may be scored.
+//
+// When a PredictionCache is in use, an input vector seen recently is
+// answered from the cache, and only the rest of each block is passed
+// through the network, still all together.
+//
+// Each output line holds one output vector, with elements separated by a
+// single space and written with enough digits to be read back exactly.
+//
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+public class Scorer {
+
+    // Block -- A block of input vectors and the output vectors computed
+    // for them.
+    static class Block {
+	PatternSet pats;
+	double[] outputs;
+	int[] missed;          // rows not found in the cache, if any
+	double[] missInputs;   // their input vectors, back to back
+	double[] missOutputs;  // their output vectors, back to back
+
+	Block(int inputN, int targetN, int outputN, int capacity) {
+	    this.pats = new PatternSet(inputN, targetN, capacity);
+	    this.outputs = new double[capacity * outputN];
+	    this.missed = null;
+	    this.missInputs = null;
+	    this.missOutputs = null;
+	}
+    }
+
+    InferenceModel model;          // the model computing outputs
+    int blockSize;                 // number of input vectors per block
+    int numThreads;                // number of threads computing outputs
+    long rows;                     // number of rows scored
+    long nanos;                    // time spent scoring, in nanoseconds
+    PredictionCache cache;         // outputs of recent inputs, or null
+
+    // Constructor with the model, block size, and number of threads
+    // specified ...
+    public Scorer(InferenceModel model, int blockSize, int numThreads) {
+	this.model = model;
+	this.blockSize = Math.max(1, blockSize);
+	this.numThreads = Math.max(1, numThreads);
+	this.rows = 0;
+	this.nanos = 0;
+	this.cache = null;
+    }
+
+    // useCache -- Answer repeated inputs from a cache holding the outputs
+    // of at most the given number of recent inputs, or from no cache if
+    // the number is zero.
+    public void useCache(int maxEntries) {
+	cache = (maxEntries > 0) ? new PredictionCache(model, maxEntries)
+	    : null;
+    }
+
+    // cache -- Return the cache of recent outputs, or null if none.
+    public PredictionCache cache() {
+	return (cache);
+    }
+
+    // score -- Compute the outputs for all of the input vectors in the
+    // given pattern file, writing them to the given output file, which is
+    // replaced if it exists.  Return false on error.
+    public boolean score(String inputFilename, String outputFilename) {
+	long start = System.nanoTime();
+	rows = 0;
+	PatternStream stream = new PatternStream();
+	if (!(stream.open(inputFilename)))
+	    return (false);
+	if (stream.inputN != model.inputN) {
+	    stream.close();
+	    return (false);
+	}
+	// Twice as many blocks as threads lets every thread compute one
+	// block while the next is read and the previous one written ...
+	int numBlocks = 2 * numThreads;
+	Deque<Block> free = new ArrayDeque<Block>();
+	for (int b = 0; b < numBlocks; b++)
+	    free.add(new Block(stream.inputN, stream.outputN, model.outputN,
+			       blockSize));
+	Deque<Future<Block>> pending = new ArrayDeque<Future<Block>>();
+	ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+	final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+		protected double[] initialValue() {
+		    return (model.newBatchScratch(blockSize));
+		}
+	    };
+	Writer out = null;
+	try {
+	    out = new BufferedWriter(new OutputStreamWriter
+				     (new FileOutputStream(outputFilename)),
+				     1 << 16);
+	    while (true) {
+		// Wait for the oldest block to be done if there is no room
+		// for another ...
+		if (free.isEmpty())
+		    free.add(writeBlock(pending.remove().get(), out));
+		final Block block = free.remove();
+		int count = stream.readBlock(block.pats);
+		if (count < 0)
+		    return (false);
+		if (count == 0)
+		    break;
+		pending.add(workers.submit(new Callable<Block>() {
+			public Block call() {
+			    computeBlock(block, scratch.get());
+			    return (block);
+			}
+		    }));
+	    }
+	    // Write the blocks still being computed ...
+	    while (!(pending.isEmpty()))
+		writeBlock(pending.remove().get(), out);
+	    out.flush();
+	    nanos = System.nanoTime() - start;
+	    // Success!
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	} catch (ExecutionException e) {
+	    // A block could not be computed ...
+	    return (false);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    return (false);
+	} finally {
+	    workers.shutdownNow();
+	    stream.close();
+	    try {
+		if (out != null)
+		    out.close();
+	    } catch (IOException e) {
+		// Nothing more can be done ...
+	    }
+	}
+    }
+
+    // computeBlock -- Compute the output vectors for the given block,
+    // using the given scratch array, obtained from the model's
+    // "newBatchScratch".  Any rows not found in the cache are passed
+    // through the model together.
+    void computeBlock(Block block, double[] scratch) {
+	int count = block.pats.numPatterns();
+	double[] inputs = block.pats.inputs;
+	int inputN = model.inputN;
+	int outputN = model.outputN;
+	if (cache == null) {
+	    model.predictBatch(inputs, block.outputs, count, scratch);
+	    return;
+	}
+	if (block.missed == null) {
+	    block.missed = new int[blockSize];
+	    block.missInputs = new double[blockSize * inputN];
+	    block.missOutputs = new double[blockSize * outputN];
+	}
+	// Answer what the cache can, gathering the rest ...
+	int misses = 0;
+	for (int p = 0; p < count; p++) {
+	    if (!(cache.lookup(inputs, p * inputN,
+			       block.outputs, p * outputN))) {
+		block.missed[misses] = p;
+		System.arraycopy(inputs, p * inputN,
+				 block.missInputs, misses * inputN, inputN);
+		misses = misses + 1;
+	    }
+	}
+	// Compute the rest together ...
+	model.predictBatch(block.missInputs, block.missOutputs, misses,
+			   scratch);
+	for (int m = 0; m < misses; m++) {
+	    System.arraycopy(block.missOutputs, m * outputN, block.outputs,
+			     block.missed[m] * outputN, outputN);
+	    cache.store(block.missInputs, m * inputN,
+			block.missOutputs, m * outputN);
+	}
+    }
+
+    // writeBlock -- Write the output vectors computed for the given block,
+    // one per line, and return the block.
+    Block writeBlock(Block block, Writer out) throws IOException {
+	int count = block.pats.numPatterns();
+	for (int pat = 0; pat < count; pat++) {
+	    int off = pat * model.outputN;
+	    for (int i = 0; i < model.outputN; i++) {
+		if (i > 0)
+		    out.write(' ');
+		out.write(Double.toString(block.outputs[off + i]));
+	    }
+	    out.write('\n');
+	}
+	rows = rows + count;
+	return (block);
+    }
+
+    // rowsPerSecond -- Return the number of rows scored per second by the
+    // most recent call to "score".
+    public double rowsPerSecond() {
+	if (nanos <= 0)
+	    return (0.0);
+	return (rows / (nanos / 1.0e9));
+    }
+
+    // report -- Return a one-line summary of the most recent call to
+    // "score".
+    public String report() {
+	return (String.format("Scored %d rows in %.3f seconds "
+			      + "(%.1f rows/s, %d threads).",
+			      rows, nanos / 1.0e9, rowsPerSecond(),
+			      numThreads));
+    }
+
+    // main -- Score the given input file with the model in the given
+    // binary weight file, writing the outputs to the given output file.
+    // The number of threads, the number of input vectors per block, and
+    // the number of recent outputs to cache (zero, the default, for none)
+    // may also be given.
+    public static void main(String[] args) {
+	if (args.length < 3) {
+	    System.err.println("Usage:  java Scorer WEIGHTS INPUTS OUTPUTS "
+			       + "[THREADS [BLOCK-SIZE [CACHE-ENTRIES]]]");
+	    return;
+	}
+	InferenceModel model = InferenceModel.readWeights(args[0]);
+	if (model == null) {
+	    System.err.println("Unable to read weight file.");
+	    return;
+	}
+	int numThreads = (args.length > 3) ? Integer.parseInt(args[3])
+	    : Runtime.getRuntime().availableProcessors();
+	int blockSize = (args.length > 4) ? Integer.parseInt(args[4]) : 256;
+	int cacheEntries = (args.length > 5) ? Integer.parseInt(args[5]) : 0;
+	Scorer scorer = new Scorer(model, blockSize, numThreads);
+	scorer.useCache(cacheEntries);
+	if (!(scorer.score(args[1], args[2]))) {
+	    System.err.println("Unable to score input file.");
+	    return;
+	}
+	System.out.println(scorer.report());
+	if (scorer.cache() != null)
+	    System.out.println(scorer.cache().report());
+    }
+
+
+}
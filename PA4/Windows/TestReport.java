@@ -0,0 +1,261 @@
+//
+// TestReport
+//
+// This class writes the results of a testing epoch, pattern by pattern,
+// to an output stream.  Everything goes through a single buffer, which is
+// only flushed when the report is finished, and numbers are formatted
+// without the overhead of "printf".  Three formats are supported:
+//
+//   TEXT     the verbose report, with INPUT, OUTPUT, TARGET, and SSE
+//            lines for each pattern, exactly as printed with "%f"
+//   CSV      one line per pattern, with the input, output, and target
+//            values and the SSE separated by commas, after a line of
+//            column names, with every value written exactly
+//   BINARY   a header of an int magic number ("PRES"), a long number of
+//            patterns, an int input dimensionality, and an int output
+//            dimensionality, followed by the input, output, and target
+//            values and the SSE of each pattern, as big-endian doubles
+//
+
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+
+
+public class TestReport {
+
+    public static final int TEXT = 0;
+    public static final int CSV = 1;
+    public static final int BINARY = 2;
+    public static final int MAGIC = 0x50524553;  // "PRES"
+    static final int BUFFER_SIZE = 1 << 16;     // bytes buffered at a time
+    static final int FIXED_DIGITS = 6;           // decimal places of "%f"
+
+    int format;                 // TEXT, CSV, or BINARY
+    int inputN;                 // dimensionality of input vectors
+    int outputN;                // dimensionality of output vectors
+    Writer out;                 // buffered text output
+    DataOutputStream data;      // buffered binary output
+    StringBuilder line;         // text of the pattern being written
+    boolean fastFixed;          // can "%f" be formatted without printf?
+
+    // Constructor with the output stream, format, and vector sizes
+    // specified.  The stream is not closed when the report is done ...
+    public TestReport(OutputStream str, int format, int inputN, int outputN) {
+	this.format = format;
+	this.inputN = inputN;
+	this.outputN = outputN;
+	if (format == BINARY) {
+	    this.out = null;
+	    this.data = new DataOutputStream
+		(new BufferedOutputStream(str, BUFFER_SIZE));
+	} else {
+	    this.out = new BufferedWriter(new OutputStreamWriter(str),
+					  BUFFER_SIZE);
+	    this.data = null;
+	}
+	this.line = new StringBuilder();
+	// The quick way of formatting matches "printf" only if the locale
+	// writes numbers the usual way ...
+	DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance
+	    (Locale.getDefault(Locale.Category.FORMAT));
+	this.fastFixed = ((symbols.getZeroDigit() == '0') &&
+			  (symbols.getDecimalSeparator() == '.'));
+    }
+
+    // parseFormat -- Return the format with the given name ("text",
+    // "csv", or "binary"), or a negative value if there is no such format.
+    public static int parseFormat(String name) {
+	if (name.equalsIgnoreCase("text"))
+	    return (TEXT);
+	if (name.equalsIgnoreCase("csv"))
+	    return (CSV);
+	if (name.equalsIgnoreCase("binary"))
+	    return (BINARY);
+	return (-1);
+    }
+
+    // start -- Begin a report on the given number of patterns, writing any
+    // header the format needs.  Return false on error.
+    public boolean start(long numPats) {
+	try {
+	    if (format == BINARY) {
+		data.writeInt(MAGIC);
+		data.writeLong(numPats);
+		data.writeInt(inputN);
+		data.writeInt(outputN);
+	    } else if (format == CSV) {
+		line.setLength(0);
+		appendNames(line, "input", inputN);
+		line.append(',');
+		appendNames(line, "output", outputN);
+		line.append(',');
+		appendNames(line, "target", outputN);
+		line.append(",sse\n");
+		out.append(line);
+	    }
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	}
+    }
+
+    // write -- Add one pattern to the report, given its input, output, and
+    // target vectors, and its SSE.  Return false on error.
+    public boolean write(double[] in, double[] act, double[] targ,
+			 double sse) {
+	return (write(in, 0, act, 0, targ, 0, sse));
+    }
+
+    // write -- Add one pattern to the report, as above, with its vectors
+    // starting at the given offsets in the given arrays.  Return false on
+    // error.
+    public boolean write(double[] in, int inOff, double[] act, int actOff,
+			 double[] targ, int targOff, double sse) {
+	try {
+	    if (format == BINARY) {
+		for (int i = 0; i < inputN; i++)
+		    data.writeDouble(in[inOff + i]);
+		for (int i = 0; i < outputN; i++)
+		    data.writeDouble(act[actOff + i]);
+		for (int i = 0; i < outputN; i++)
+		    data.writeDouble(targ[targOff + i]);
+		data.writeDouble(sse);
+		return (true);
+	    }
+	    line.setLength(0);
+	    if (format == CSV) {
+		appendExact(line, in, inOff, inputN);
+		line.append(',');
+		appendExact(line, act, actOff, outputN);
+		line.append(',');
+		appendExact(line, targ, targOff, outputN);
+		line.append(',').append(sse).append('\n');
+	    } else {
+		line.append("\nINPUT:   ");
+		appendFixed(line, in, inOff, inputN);
+		line.append("\nOUTPUT:  ");
+		appendFixed(line, act, actOff, outputN);
+		line.append("\nTARGET:  ");
+		appendFixed(line, targ, targOff, outputN);
+		line.append("\nSSE = ");
+		appendFixed(line, sse);
+		line.append('\n');
+	    }
+	    out.append(line);
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	}
+    }
+
+    // finish -- Flush everything written to the report out to the stream.
+    // Return false on error.
+    public boolean finish() {
+	try {
+	    if (data != null)
+		data.flush();
+	    if (out != null)
+		out.flush();
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (false);
+	}
+    }
+
+    // appendNames -- Append numbered column names with the given prefix,
+    // separated by commas.
+    static void appendNames(StringBuilder buf, String prefix, int n) {
+	for (int i = 0; i < n; i++) {
+	    if (i > 0)
+		buf.append(',');
+	    buf.append(prefix).append(i + 1);
+	}
+    }
+
+    // appendExact -- Append the given number of values, starting at the
+    // given offset, separated by commas, each with just enough digits to
+    // be read back exactly.
+    static void appendExact(StringBuilder buf, double[] vals, int off,
+			    int n) {
+	for (int i = 0; i < n; i++) {
+	    if (i > 0)
+		buf.append(',');
+	    buf.append(vals[off + i]);
+	}
+    }
+
+    // appendFixed -- Append the given number of values, starting at the
+    // given offset, separated by single spaces, each as formatted by "%f",
+    // just as Vector.write writes them.
+    void appendFixed(StringBuilder buf, double[] vals, int off, int n) {
+	for (int i = 0; i < n; i++) {
+	    if (i > 0)
+		buf.append(' ');
+	    appendFixed(buf, vals[off + i]);
+	}
+    }
+
+    // appendFixed -- Append the given value as formatted by "%f".
+    void appendFixed(StringBuilder buf, double val) {
+	if (fastFixed)
+	    formatFixed(buf, val);
+	else
+	    buf.append(String.format("%f", val));
+    }
+
+    // formatFixed -- Append the given value with six decimal places,
+    // exactly as "%f" formats it in a locale with the usual digits.  Like
+    // "printf", this rounds the shortest decimal representation of the
+    // value, given by Double.toString, half up, rather than rounding the
+    // exact binary value.
+    static void formatFixed(StringBuilder buf, double val) {
+	if (Double.isNaN(val) || Double.isInfinite(val)) {
+	    buf.append(val);
+	    return;
+	}
+	if (Double.doubleToRawLongBits(val) < 0)
+	    buf.append('-');
+	// Split the shortest representation into its digits and the
+	// position of the decimal point among them ...
+	String repr = Double.toString(Math.abs(val));
+	int exp = repr.indexOf('E');
+	int end = (exp < 0) ? repr.length() : exp;
+	int dot = repr.indexOf('.');
+	char[] digits = new char[end - 1];
+	repr.getChars(0, dot, digits, 0);
+	repr.getChars(dot + 1, end, digits, dot);
+	int point = dot;
+	if (exp >= 0)
+	    point = point + Integer.parseInt(repr.substring(exp + 1));
+	// Lay out the integer part and the decimal places, leaving room
+	// for a carry into a new leading digit ...
+	int intLength = Math.max(1, point);
+	char[] fixed = new char[1 + intLength + FIXED_DIGITS];
+	fixed[0] = '0';
+	for (int k = 0; k < intLength + FIXED_DIGITS; k++) {
+	    int d = k + point - intLength;
+	    fixed[k + 1] = ((d >= 0) && (d < digits.length)) ? digits[d] : '0';
+	}
+	// Round half up on the first digit dropped ...
+	int next = point + FIXED_DIGITS;
+	if ((next >= 0) && (next < digits.length) && (digits[next] >= '5')) {
+	    int k = fixed.length - 1;
+	    while (fixed[k] == '9') {
+		fixed[k] = '0';
+		k = k - 1;
+	    }
+	    fixed[k] = (char) (fixed[k] + 1);
+	}
+	int first = (fixed[0] == '0') ? 1 : 0;
+	buf.append(fixed, first, 1 + intLength - first);
+	buf.append('.');
+	buf.append(fixed, 1 + intLength, FIXED_DIGITS);
+    }
+
+
+}
@@ -0,0 +1,547 @@
+//
+// WeightFile
+//
+// This class reads and writes network weights in a binary format.  Unlike
+// the text format used by Network.readWeights and Network.writeWeights,
+// the binary format keeps every bit of every weight, records the topology
+// of the network so that mismatched files are detected, and ends with a
+// checksum so that damaged files are detected.  Files are written in a
+// single pass through a fixed-size buffer, and they are read back through
+// the same kind of buffer, once to check the checksum and once more to
+// take the weights, so that files of any size can be read.
+//
+// The layout of a file, in little-endian byte order, is:
+//
+//   int     magic number ("NETW")
+//   int     format version
+//   int     flags
+//   (if the state flag is set)
+//           int length, followed by that many bytes of training state
+//   int     number of layers, L
+//   L x     int size, double minimum activation, double maximum activation
+//   int     number of projections, P
+//   P x     int input layer index, int output layer index
+//   L x     bias weights for the layer
+//   P x     weight matrix for the projection, in row-major order
+//   (if the deltas flag is set)
+//   L x     bias weight deltas for the layer
+//   P x     weight delta matrix for the projection, in row-major order
+//   long    CRC-32 checksum of all of the preceding bytes
+//
+// Projections appear in the order of inputs to the layers, just as in
+// the text format.  The training state is opaque to this class; it is
+// used by BP to record everything else needed to resume training.
+//
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+
+public class WeightFile {
+
+    public static final int MAGIC = 0x4e455457;  // "NETW"
+    public static final int VERSION = 1;
+    public static final int FLAG_DELTAS = 1;     // weight deltas included
+    public static final int FLAG_STATE = 2;      // training state included
+    static final int BUFFER_SIZE = 1 << 20;      // bytes moved at a time
+
+    FileChannel channel;     // the file being written or read
+    ByteBuffer buf;          // bytes waiting to be written, or to be taken
+    CRC32 crc;               // checksum of the bytes moved so far
+    long left;               // bytes before the checksum not yet in buf
+
+    // Constructor with the channel to be written or read specified ...
+    WeightFile(FileChannel channel) {
+	this.channel = channel;
+	this.buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	this.buf.order(ByteOrder.LITTLE_ENDIAN);
+	this.crc = new CRC32();
+	this.left = 0;
+    }
+
+    // isWeightFile -- Return true if the given file begins with the magic
+    // number of the binary weight format.
+    public static boolean isWeightFile(String wtsFilename) {
+	try {
+	    DataInputStream in
+		= new DataInputStream(new FileInputStream(wtsFilename));
+	    try {
+		return (Integer.reverseBytes(in.readInt()) == MAGIC);
+	    } finally {
+		in.close();
+	    }
+	} catch (IOException e) {
+	    // Too short, or not there at all ...
+	    return (false);
+	}
+    }
+
+    // write -- Write the weights of the given network to the given file,
+    // replacing any existing file.  Return false on error.
+    public static boolean write(Network net, String wtsFilename) {
+	return (write(net, wtsFilename, false, null));
+    }
+
+    // write -- Write the weights of the given network to the given file,
+    // replacing any existing file, along with the weight deltas, if
+    // requested, and the given training state, if it is not null.  The
+    // file is written under a temporary name that is renamed only once the
+    // file is complete and forced to the disk, so that an interrupted
+    // write, or a crash soon after, never leaves a damaged weight file
+    // behind.  Return false on error.
+    public static boolean write(Network net, String wtsFilename,
+				boolean deltas, byte[] state) {
+	Path wtsPath = Paths.get(wtsFilename);
+	Path tempPath = Paths.get(wtsFilename + ".tmp");
+	try {
+	    FileChannel ch = FileChannel.open(tempPath,
+					      StandardOpenOption.CREATE,
+					      StandardOpenOption.WRITE,
+					      StandardOpenOption.TRUNCATE_EXISTING);
+	    try {
+		WeightFile out = new WeightFile(ch);
+		out.writeNetwork(net, deltas, state);
+		out.finish();
+		// Make sure the contents are on the disk before the file
+		// takes the place of the old one ...
+		ch.force(true);
+	    } finally {
+		ch.close();
+	    }
+	    try {
+		Files.move(tempPath, wtsPath,
+			   StandardCopyOption.REPLACE_EXISTING,
+			   StandardCopyOption.ATOMIC_MOVE);
+	    } catch (AtomicMoveNotSupportedException e) {
+		Files.move(tempPath, wtsPath,
+			   StandardCopyOption.REPLACE_EXISTING);
+	    }
+	    syncDirectory(wtsPath.toAbsolutePath().getParent());
+	    // Success!
+	    return (true);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    try {
+		Files.deleteIfExists(tempPath);
+	    } catch (IOException e2) {
+		// Nothing more can be done ...
+	    }
+	    return (false);
+	}
+    }
+
+    // syncDirectory -- Force the given directory to the disk, so that a
+    // file just renamed into it keeps its new name after a crash.  Not
+    // every system can open a directory this way, so failure is ignored.
+    static void syncDirectory(Path dir) {
+	if (dir == null)
+	    return;
+	try {
+	    FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ);
+	    try {
+		ch.force(true);
+	    } finally {
+		ch.close();
+	    }
+	} catch (IOException e) {
+	    // The rename is still done, just not yet certain to last ...
+	}
+    }
+
+    // read -- Read weights from the given file into the given network,
+    // which must have the topology recorded in the file.  Weight deltas
+    // are read as well, if the file includes them.  Return false on error,
+    // including a checksum or topology mismatch, or a file that ends too
+    // soon.
+    public static boolean read(Network net, String wtsFilename) {
+	WeightFile in = open(wtsFilename);
+	if (in == null)
+	    return (false);
+	try {
+	    int flags = in.getInt();
+	    in.skipState(flags);
+	    return (in.readNetwork(net, flags));
+	} catch (IOException e) {
+	    // The file is too short, or could not be read ...
+	    return (false);
+	} finally {
+	    in.close();
+	}
+    }
+
+    // readState -- Return the training state recorded in the given file,
+    // or null if there is none or the file cannot be read.
+    public static byte[] readState(String wtsFilename) {
+	WeightFile in = open(wtsFilename);
+	if (in == null)
+	    return (null);
+	try {
+	    int flags = in.getInt();
+	    if ((flags & FLAG_STATE) == 0)
+		return (null);
+	    byte[] state = new byte[in.stateLength()];
+	    in.getBytes(state);
+	    return (state);
+	} catch (IOException e) {
+	    // The file is too short, or could not be read ...
+	    return (null);
+	} finally {
+	    in.close();
+	}
+    }
+
+    // readCheckpoint -- Read weights and weight deltas from the given file
+    // into the given network, just as "read" does, and return the training
+    // state recorded along with them, taking both from a single pass over
+    // the file.  Return null on error, or if the file records no training
+    // state, in which case the network is left alone.
+    public static byte[] readCheckpoint(Network net, String wtsFilename) {
+	WeightFile in = open(wtsFilename);
+	if (in == null)
+	    return (null);
+	try {
+	    int flags = in.getInt();
+	    if ((flags & FLAG_STATE) == 0)
+		return (null);
+	    byte[] state = new byte[in.stateLength()];
+	    in.getBytes(state);
+	    if (!(in.readNetwork(net, flags)))
+		return (null);
+	    return (state);
+	} catch (IOException e) {
+	    // The file is too short, or could not be read ...
+	    return (null);
+	} finally {
+	    in.close();
+	}
+    }
+
+    // open -- Open the given weight file, check its checksum, magic
+    // number, and version, and return a WeightFile positioned just after
+    // the version, which the caller must close.  Return null on error.
+    static WeightFile open(String wtsFilename) {
+	try {
+	    FileChannel ch = FileChannel.open(Paths.get(wtsFilename),
+					      StandardOpenOption.READ);
+	    WeightFile in = new WeightFile(ch);
+	    boolean ok = false;
+	    try {
+		ok = in.check();
+	    } finally {
+		if (!(ok))
+		    ch.close();
+	    }
+	    return (ok ? in : null);
+	} catch (IOException e) {
+	    // Something went wrong ...
+	    return (null);
+	}
+    }
+
+    // check -- Check the checksum, magic number, and version of the file
+    // being read, leaving it positioned just after the version.  Return
+    // false if any of them is wrong.
+    boolean check() throws IOException {
+	long size = channel.size();
+	if (size < 16)
+	    return (false);
+	// Check the checksum before trusting anything else ...
+	buf.limit(0);
+	left = size - 8;
+	while (left > 0) {
+	    fill();
+	    crc.update(buf);
+	}
+	buf.clear();
+	buf.limit(8);
+	while (buf.hasRemaining())
+	    if (channel.read(buf, size - 8 + buf.position()) < 0)
+		return (false);
+	buf.flip();
+	if (crc.getValue() != buf.getLong())
+	    return (false);
+	// Start again from the beginning ...
+	channel.position(0);
+	buf.limit(0);
+	left = size - 8;
+	return ((getInt() == MAGIC) && (getInt() == VERSION));
+    }
+
+    // close -- Close the file being read.
+    void close() {
+	try {
+	    channel.close();
+	} catch (IOException e) {
+	    // Everything wanted has already been read ...
+	}
+    }
+
+    // stateLength -- Read the length of the training state, throwing
+    // EOFException if the file does not hold that many bytes more.
+    int stateLength() throws IOException {
+	int length = getInt();
+	if ((length < 0) || (length > remaining()))
+	    throw new EOFException();
+	return (length);
+    }
+
+    // skipState -- Skip past the training state, if the given flags say
+    // that there is any, throwing EOFException if the file is too short.
+    void skipState(int flags) throws IOException {
+	if ((flags & FLAG_STATE) != 0)
+	    skip(stateLength());
+    }
+
+    // readNetwork -- Read the topology, weights, and weight deltas, if the
+    // given flags say that there are any, into the given network.  Return
+    // false if the topology does not match the network.
+    boolean readNetwork(Network net, int flags) throws IOException {
+	if (!(readTopology(net)))
+	    return (false);
+	// Read bias weights ...
+	for (Layer lay : net.layers)
+	    getDoubles(lay.bias.el);
+	// Read weight matrices ...
+	for (Layer lay : net.layers)
+	    for (Projection p : lay.inputs)
+		for (int i = 0; i < p.W.rows; i++)
+		    getDoubles(p.W.el[i]);
+	if ((flags & FLAG_DELTAS) != 0) {
+	    // Read bias weight deltas ...
+	    for (Layer lay : net.layers)
+		getDoubles(lay.biasDelta.el);
+	    // Read weight delta matrices ...
+	    for (Layer lay : net.layers)
+		for (Projection p : lay.inputs)
+		    for (int i = 0; i < p.deltaW.rows; i++)
+			getDoubles(p.deltaW.el[i]);
+	}
+	return (true);
+    }
+
+    // readTopology -- Read the topology, returning false if it does not
+    // match the given network.
+    boolean readTopology(Network net) throws IOException {
+	if (getInt() != net.layers.size())
+	    return (false);
+	for (Layer lay : net.layers) {
+	    if (getInt() != lay.n)
+		return (false);
+	    getDouble();
+	    getDouble();
+	}
+	List<Layer> layers = new ArrayList<Layer>(net.layers);
+	int numProjections = 0;
+	for (Layer lay : net.layers)
+	    numProjections = numProjections + lay.inputs.size();
+	if (getInt() != numProjections)
+	    return (false);
+	for (Layer lay : net.layers) {
+	    for (Projection p : lay.inputs) {
+		if ((getInt() != layers.indexOf(p.input)) ||
+		    (getInt() != layers.indexOf(p.output)))
+		    return (false);
+	    }
+	}
+	return (true);
+    }
+
+    // remaining -- Return the number of bytes before the checksum not yet
+    // taken from the file being read.
+    long remaining() {
+	return (buf.remaining() + left);
+    }
+
+    // fill -- Read the next part of the file being read into the buffer,
+    // after the bytes not yet taken from it, stopping short of the
+    // checksum.  Throw EOFException if there is nothing more to read.
+    void fill() throws IOException {
+	if (left == 0)
+	    throw new EOFException();
+	buf.compact();
+	int count = (int) Math.min(buf.remaining(), left);
+	buf.limit(buf.position() + count);
+	while (buf.hasRemaining())
+	    if (channel.read(buf) < 0)
+		throw new EOFException();
+	left = left - count;
+	buf.flip();
+    }
+
+    // need -- Make sure that the buffer holds at least the given number of
+    // bytes not yet taken from it.
+    void need(int count) throws IOException {
+	while (buf.remaining() < count)
+	    fill();
+    }
+
+    // getInt -- Take an int from the file.
+    int getInt() throws IOException {
+	need(4);
+	return (buf.getInt());
+    }
+
+    // getDouble -- Take a double from the file.
+    double getDouble() throws IOException {
+	need(8);
+	return (buf.getDouble());
+    }
+
+    // getBytes -- Fill the given array with bytes taken from the file.
+    void getBytes(byte[] dst) throws IOException {
+	int off = 0;
+	while (off < dst.length) {
+	    if (!(buf.hasRemaining()))
+		fill();
+	    int count = Math.min(buf.remaining(), dst.length - off);
+	    buf.get(dst, off, count);
+	    off = off + count;
+	}
+    }
+
+    // getDoubles -- Fill the given array with doubles taken from the file.
+    void getDoubles(double[] dst) throws IOException {
+	getDoubles(dst, 0, dst.length);
+    }
+
+    // getDoubles -- Fill the given part of the given array with doubles
+    // taken from the file, copying as many as the buffer holds at a time.
+    void getDoubles(double[] dst, int off, int len) throws IOException {
+	int end = off + len;
+	while (off < end) {
+	    need(8);
+	    int count = Math.min(buf.remaining() / 8, end - off);
+	    buf.asDoubleBuffer().get(dst, off, count);
+	    buf.position(buf.position() + 8 * count);
+	    off = off + count;
+	}
+    }
+
+    // skip -- Skip the given number of bytes of the file, throwing
+    // EOFException if the file does not hold that many more.
+    void skip(long count) throws IOException {
+	if (count > remaining())
+	    throw new EOFException();
+	int inBuf = (int) Math.min(buf.remaining(), count);
+	buf.position(buf.position() + inBuf);
+	count = count - inBuf;
+	channel.position(channel.position() + count);
+	left = left - count;
+    }
+
+    // writeNetwork -- Write the header, topology, and weights of the given
+    // network, along with its weight deltas, if requested, and the given
+    // training state, if it is not null.
+    void writeNetwork(Network net, boolean deltas, byte[] state)
+	throws IOException {
+	List<Layer> layers = new ArrayList<Layer>(net.layers);
+	int numProjections = 0;
+	for (Layer lay : layers)
+	    numProjections = numProjections + lay.inputs.size();
+	// Write the header and topology ...
+	putInt(MAGIC);
+	putInt(VERSION);
+	putInt((deltas ? FLAG_DELTAS : 0) | ((state != null) ? FLAG_STATE : 0));
+	if (state != null) {
+	    putInt(state.length);
+	    putBytes(state);
+	}
+	putInt(layers.size());
+	for (Layer lay : layers) {
+	    putInt(lay.n);
+	    putDouble(lay.min);
+	    putDouble(lay.max);
+	}
+	putInt(numProjections);
+	for (Layer lay : layers) {
+	    for (Projection p : lay.inputs) {
+		putInt(layers.indexOf(p.input));
+		putInt(layers.indexOf(p.output));
+	    }
+	}
+	// Write bias weights ...
+	for (Layer lay : layers)
+	    putDoubles(lay.bias.el);
+	// Write weight matrices ...
+	for (Layer lay : layers)
+	    for (Projection p : lay.inputs)
+		for (int i = 0; i < p.W.rows; i++)
+		    putDoubles(p.W.el[i]);
+	if (deltas) {
+	    // Write bias weight deltas ...
+	    for (Layer lay : layers)
+		putDoubles(lay.biasDelta.el);
+	    // Write weight delta matrices ...
+	    for (Layer lay : layers)
+		for (Projection p : lay.inputs)
+		    for (int i = 0; i < p.deltaW.rows; i++)
+			putDoubles(p.deltaW.el[i]);
+	}
+    }
+
+    // putInt -- Append an int to the file.
+    void putInt(int val) throws IOException {
+	if (buf.remaining() < 4)
+	    flush();
+	buf.putInt(val);
+    }
+
+    // putDouble -- Append a double to the file.
+    void putDouble(double val) throws IOException {
+	if (buf.remaining() < 8)
+	    flush();
+	buf.putDouble(val);
+    }
+
+    // putBytes -- Append an array of bytes to the file.
+    void putBytes(byte[] src) throws IOException {
+	int off = 0;
+	while (off < src.length) {
+	    if (!(buf.hasRemaining()))
+		flush();
+	    int count = Math.min(buf.remaining(), src.length - off);
+	    buf.put(src, off, count);
+	    off = off + count;
+	}
+    }
+
+    // putDoubles -- Append an array of doubles to the file, copying as many
+    // as will fit into the buffer at a time.
+    void putDoubles(double[] src) throws IOException {
+	int off = 0;
+	while (off < src.length) {
+	    if (buf.remaining() < 8)
+		flush();
+	    int count = Math.min(buf.remaining() / 8, src.length - off);
+	    buf.asDoubleBuffer().put(src, off, count);
+	    buf.position(buf.position() + 8 * count);
+	    off = off + count;
+	}
+    }
+
+    // flush -- Write out the buffered bytes, adding them to the checksum.
+    void flush() throws IOException {
+	buf.flip();
+	crc.update(buf.duplicate());
+	while (buf.hasRemaining())
+	    channel.write(buf);
+	buf.clear();
+    }
+
+    // finish -- Write out the remaining bytes, followed by the checksum.
+    void finish() throws IOException {
+	flush();
+	buf.putLong(crc.getValue());
+	buf.flip();
+	while (buf.hasRemaining())
+	    channel.write(buf);
+	buf.clear();
+    }
+
+
+}
@@ -0,0 +1,50 @@
+//
+// KernelBenchmark
+//
+// This class holds the settings shared by the microbenchmarks of the
+// vector, matrix, and layer kernels.  Each kernel is measured at sizes
+// from 2 to 4096 units, as the average time per call.  Running with
+// "-prof gc" adds the allocation rate and garbage collection counts of
+// each kernel to the results, which matters here because most kernels
+// return newly allocated vectors and matrices.
+//
+
+package pa4;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@State(Scope.Thread)
+public abstract class KernelBenchmark {
+
+    static final long SEED = 175;   // seed for the random values used
+
+    @Param({"2", "16", "128", "1024", "4096"})
+    public int size;                // number of units
+
+    // randomVector -- Return a vector of the given size, filled with
+    // random values.
+    static Vector randomVector(int n, Random generator) {
+	Vector v = new Vector(n);
+	v.randomize(-1.0, 1.0, generator);
+	return (v);
+    }
+
+    // randomMatrix -- Return a matrix of the given size, filled with
+    // random values.
+    static Matrix randomMatrix(int rows, int cols, Random generator) {
+	Matrix m = new Matrix(rows, cols);
+	m.randomize(-1.0, 1.0, generator);
+	return (m);
+    }
+
+
+}
@@ -0,0 +1,68 @@
+//
+// LayerBenchmark
+//
+// This class measures the layer kernels, in a network of three layers of
+// the same size:  computing the activation of the hidden layer, computing
+// the unit deltas of the hidden layer from those of the output layer, and
+// incrementing the weight deltas of the projection into the output layer.
+// The weight deltas are cleared before each iteration, so that they do
+// not grow without bound.
+//
+
+package pa4;
+
+
+import java.util.*;
+import org.openjdk.jmh.annotations.*;
+
+
+public class LayerBenchmark extends KernelBenchmark {
+
+    Network net;         // the network holding the layers
+    Layer input;         // the input layer
+    Layer hidden;        // the hidden layer being measured
+    Layer output;        // the output layer
+    Projection p;        // the projection from hidden to output
+
+    @Setup
+    public void setup() {
+	Random generator = new Random(SEED);
+	net = new Network();
+	input = net.createLayer(size);
+	hidden = net.createLayer(size);
+	output = net.createLayer(size);
+	net.createProjection(input, hidden);
+	p = net.createProjection(hidden, output);
+	net.randomizeWeights(-0.5, 0.5, generator);
+	// Fill in activations and unit deltas to work from ...
+	input.loadInput(randomVector(size, generator));
+	output.loadTarget(randomVector(size, generator));
+	net.computeActivation();
+	output.computeOutputDelta();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearWeightDeltas() {
+	net.clearWeightDeltas();
+    }
+
+    @Benchmark
+    public Vector computeActivation() {
+	hidden.computeActivation();
+	return (hidden.act);
+    }
+
+    @Benchmark
+    public Vector computeHiddenDelta() {
+	hidden.computeHiddenDelta();
+	return (hidden.delta);
+    }
+
+    @Benchmark
+    public Matrix incrementWeightDeltas() {
+	p.incrementWeightDeltas();
+	return (p.deltaW);
+    }
+
+
+}
@@ -0,0 +1,39 @@
+//
+// MatrixBenchmark
+//
+// This class measures the matrix kernels:  the matrix-vector product
+// used to propagate activation forward, and the transpose used to
+// propagate error backward.
+//
+
+package pa4;
+
+
+import java.util.*;
+import org.openjdk.jmh.annotations.*;
+
+
+public class MatrixBenchmark extends KernelBenchmark {
+
+    Matrix m;        // square weight matrix
+    Vector v;        // vector multiplied by the matrix
+
+    @Setup
+    public void setup() {
+	Random generator = new Random(SEED);
+	m = randomMatrix(size, size, generator);
+	v = randomVector(size, generator);
+    }
+
+    @Benchmark
+    public Vector product() {
+	return (m.product(v));
+    }
+
+    @Benchmark
+    public Matrix transpose() {
+	return (m.transpose());
+    }
+
+
+}
@@ -0,0 +1,129 @@
+//
+// PatternInputBenchmark
+//
+// This class measures how well decompression overlaps with parsing when
+// a gzip compressed binary pattern file is read.  A file of random
+// patterns is written once, and then read in four ways:  decompressing it
+// without parsing, parsing an uncompressed copy held in memory, doing
+// both on one thread, and doing both with decompression on a separate
+// thread, as PatternInput does when there is more than one processor.
+// When the two really overlap, the last takes about as long as the slower
+// of the first two, rather than as long as the third.  On a machine with
+// a single processor, it can do no better than the third.
+//
+
+package pa4;
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+import org.openjdk.jmh.annotations.*;
+
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class PatternInputBenchmark {
+
+    static final long SEED = 175;     // seed for the random patterns
+    static final int INPUTS = 8;      // inputs per pattern
+    static final int OUTPUTS = 2;     // outputs per pattern
+
+    @Param({"250000"})
+    public int patterns;              // patterns in the file
+
+    File file;                        // the compressed pattern file
+    byte[] decoded;                   // its uncompressed contents
+
+    @Setup
+    public void setup() throws IOException {
+	Random generator = new Random(SEED);
+	PatternSet pats = new PatternSet(INPUTS, OUTPUTS, patterns);
+	Pattern pat = new Pattern(INPUTS, OUTPUTS);
+	for (int p = 0; p < patterns; p++) {
+	    for (int i = 0; i < INPUTS; i++)
+		pat.input.set(i, generator.nextInt(2));
+	    for (int i = 0; i < OUTPUTS; i++)
+		pat.target.set(i, generator.nextDouble());
+	    pats.addPattern(pat);
+	}
+	file = File.createTempFile("patterns", ".dat.gz");
+	DataOutputStream out
+	    = new DataOutputStream(new BufferedOutputStream
+				   (new GZIPOutputStream
+				    (new FileOutputStream(file))));
+	try {
+	    pats.writeBinary(out);
+	} finally {
+	    out.close();
+	}
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DataOutputStream copy = new DataOutputStream(bytes);
+	pats.writeBinary(copy);
+	copy.close();
+	decoded = bytes.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+	file.delete();
+    }
+
+    // compressed -- Return a decompressing stream of the pattern file.
+    InputStream compressed() throws IOException {
+	return (new GZIPInputStream(new BufferedInputStream
+				    (new FileInputStream(file)),
+				    PatternInput.CHUNK_SIZE));
+    }
+
+    // parse -- Read a pattern set from the given stream, then close it.
+    static PatternSet parse(InputStream in) throws IOException {
+	PatternSet pats = new PatternSet();
+	try {
+	    if (!(pats.readBinary(new DataInputStream
+				  (new BufferedInputStream
+				   (in, PatternInput.CHUNK_SIZE)))))
+		throw new IOException("bad pattern file");
+	} finally {
+	    in.close();
+	}
+	return (pats);
+    }
+
+    @Benchmark
+    public long decodeOnly() throws IOException {
+	InputStream in = compressed();
+	byte[] buf = new byte[PatternInput.CHUNK_SIZE];
+	long total = 0;
+	try {
+	    int count;
+	    while ((count = in.read(buf)) >= 0)
+		total = total + count;
+	} finally {
+	    in.close();
+	}
+	return (total);
+    }
+
+    @Benchmark
+    public PatternSet parseOnly() throws IOException {
+	return (parse(new ByteArrayInputStream(decoded)));
+    }
+
+    @Benchmark
+    public PatternSet inline() throws IOException {
+	return (parse(compressed()));
+    }
+
+    @Benchmark
+    public PatternSet overlapped() throws IOException {
+	return (parse(PatternInput.decode(compressed())));
+    }
+
+
+}
@@ -0,0 +1,43 @@
+//
+// VectorBenchmark
+//
+// This class measures the vector kernels:  the outer product, and the
+// squashing function and its derivative.
+//
+
+package pa4;
+
+
+import java.util.*;
+import org.openjdk.jmh.annotations.*;
+
+
+public class VectorBenchmark extends KernelBenchmark {
+
+    Vector a;        // first operand
+    Vector b;        // second operand
+
+    @Setup
+    public void setup() {
+	Random generator = new Random(SEED);
+	a = randomVector(size, generator);
+	b = randomVector(size, generator);
+    }
+
+    @Benchmark
+    public Matrix outerProduct() {
+	return (a.outerProduct(b));
+    }
+
+    @Benchmark
+    public Vector squash() {
+	return (a.squash(0.0, 1.0));
+    }
+
+    @Benchmark
+    public Vector derivative() {
+	return (a.derivative(0.0, 1.0));
+    }
+
+
+}
@@ -0,0 +1,101 @@
+//
+// CheckpointTest
+//
+// This class checks that training resumed from a checkpoint continues
+// exactly as it would have had it never been interrupted.  A seeded run
+// of N epochs is compared with a run of N/2 epochs, a checkpoint, and a
+// further N/2 epochs in a fresh training process resumed from that
+// checkpoint, and the two must give the same SSE after every epoch, bit
+// for bit.
+//
+
+package pa4;
+
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+import java.io.*;
+import java.nio.file.*;
+
+
+public class CheckpointTest {
+
+    static final long SEED = 33;      // seed for the initial weights
+    static final int EPOCHS = 400;    // epochs in the uninterrupted run
+
+    @TempDir
+    Path dir;                         // directory for the files
+
+    // newBP -- Return a training process for a 2-3-1 network, seeded with
+    // the given seed, reading its training patterns from the given file.
+    static BP newBP(long seed, String patsFilename) {
+	BP bp = new BP();
+	bp.setRandomSeed(seed);
+	Network net = new Network();
+	Layer in = net.createLayer(2);
+	Layer hidden = net.createLayer(3);
+	Layer out = net.createLayer(1);
+	net.createProjection(in, hidden);
+	net.createProjection(hidden, out);
+	bp.net = net;
+	assertTrue(bp.readTrainingPatterns(patsFilename));
+	return (bp);
+    }
+
+    // train -- Run the given number of training epochs, recording the SSE
+    // of each in the given array, starting at the given index.
+    static void train(BP bp, int epochs, double[] sse, int first) {
+	for (int e = 0; e < epochs; e++) {
+	    sse[first + e] = bp.runTrainingEpoch();
+	    assertTrue(sse[first + e] >= 0.0);
+	}
+    }
+
+    // xorPatterns -- Write the XOR patterns to a file, returning its name.
+    String xorPatterns() throws IOException {
+	Path pats = dir.resolve("xor.dat");
+	Files.write(pats, ("4 2 1\n" +
+			   "0.0 0.0 0.0\n" +
+			   "0.0 1.0 1.0\n" +
+			   "1.0 0.0 1.0\n" +
+			   "1.0 1.0 0.0\n").getBytes("US-ASCII"));
+	return (pats.toString());
+    }
+
+    @Test
+    public void resumedRunMatchesUninterruptedRun() throws IOException {
+	String patsFilename = xorPatterns();
+	String ckptFilename = dir.resolve("xor.ckpt").toString();
+	// Train straight through ...
+	double[] expected = new double[EPOCHS];
+	BP whole = newBP(SEED, patsFilename);
+	assertTrue(whole.initNetwork());
+	train(whole, EPOCHS, expected, 0);
+	// Train half way, checkpoint, and resume in a fresh process, seeded
+	// differently, so that only the checkpoint can make it match ...
+	double[] actual = new double[EPOCHS];
+	BP first = newBP(SEED, patsFilename);
+	assertTrue(first.initNetwork());
+	train(first, EPOCHS / 2, actual, 0);
+	assertTrue(first.writeCheckpoint(ckptFilename));
+	BP second = newBP(SEED + 1, patsFilename);
+	assertTrue(second.readCheckpoint(ckptFilename));
+	assertEquals(EPOCHS / 2, second.epochs);
+	train(second, EPOCHS - EPOCHS / 2, actual, EPOCHS / 2);
+	assertArrayEquals(expected, actual, 0.0);
+	assertEquals(EPOCHS, second.epochs);
+    }
+
+    @Test
+    public void plainWeightFileIsNotACheckpoint() throws IOException {
+	String patsFilename = xorPatterns();
+	String wtsFilename = dir.resolve("xor.wts").toString();
+	BP bp = newBP(SEED, patsFilename);
+	assertTrue(bp.initNetwork());
+	assertTrue(bp.net.writeWeightsBinary(wtsFilename));
+	assertFalse(newBP(SEED, patsFilename).readCheckpoint(wtsFilename));
+    }
+
+
+}
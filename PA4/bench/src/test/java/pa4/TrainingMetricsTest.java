@@ -0,0 +1,83 @@
+//
+// TrainingMetricsTest
+//
+// This class checks the phase times that TrainingMetrics estimates from
+// its sampled patterns.  Every timed pattern is given the same made-up
+// clock readings, so the estimates should come out exactly equal to the
+// number of patterns times the time of each phase, whatever the size of
+// the epochs, and in particular when an epoch holds fewer patterns than
+// SAMPLE_INTERVAL, so that most epochs have no timed pattern at all.
+//
+
+package pa4;
+
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+
+
+public class TrainingMetricsTest {
+
+    static final long FORWARD = 100;     // nanoseconds per forward pass
+    static final long BACKWARD = 200;    // nanoseconds per backward pass
+    static final long DELTA = 300;       // nanoseconds per delta phase
+
+    // train -- Record the given number of epochs of the given number of
+    // patterns each, returning the metrics.
+    static TrainingMetrics train(int epochs, int patternsPerEpoch) {
+	TrainingMetrics metrics = new TrainingMetrics();
+	for (int e = 1; e <= epochs; e++) {
+	    metrics.startEpoch();
+	    for (int p = 0; p < patternsPerEpoch; p++)
+		if (metrics.startPattern())
+		    metrics.recordPattern(0, FORWARD, FORWARD + BACKWARD,
+					  FORWARD + BACKWARD + DELTA);
+	    metrics.endEpoch(e, 1.0);
+	}
+	return (metrics);
+    }
+
+    // checkPhases -- Check that the estimated phase times match the given
+    // number of patterns.
+    static void checkPhases(TrainingMetrics metrics, long patterns) {
+	assertEquals(patterns, metrics.patterns());
+	assertEquals(patterns * FORWARD / 1.0e9, metrics.forwardSeconds(),
+		     1.0e-12);
+	assertEquals(patterns * BACKWARD / 1.0e9, metrics.backwardSeconds(),
+		     1.0e-12);
+	assertEquals(patterns * DELTA / 1.0e9, metrics.deltaSeconds(),
+		     1.0e-12);
+    }
+
+    @Test
+    public void epochSmallerThanSampleInterval() {
+	// XOR:  four patterns per epoch, so one epoch in eight is timed ...
+	int epochs = 64;
+	int size = 4;
+	assertTrue(size < TrainingMetrics.SAMPLE_INTERVAL);
+	checkPhases(train(epochs, size), (long) epochs * size);
+    }
+
+    @Test
+    public void epochNotAMultipleOfSampleInterval() {
+	checkPhases(train(10, 5), 50);
+	checkPhases(train(3, TrainingMetrics.SAMPLE_INTERVAL + 7),
+		    3L * (TrainingMetrics.SAMPLE_INTERVAL + 7));
+    }
+
+    @Test
+    public void epochLargerThanSampleInterval() {
+	checkPhases(train(5, 10 * TrainingMetrics.SAMPLE_INTERVAL),
+		    50L * TrainingMetrics.SAMPLE_INTERVAL);
+    }
+
+    @Test
+    public void publishedAfterEveryEpoch() {
+	TrainingMetrics metrics = train(7, 3);
+	assertEquals(7, metrics.epochs());
+	assertEquals(3, metrics.lastEpochPatterns());
+	assertEquals(1.0, metrics.sse(7), 0.0);
+    }
+
+
+}
@@ -0,0 +1,141 @@
+//
+// WeightFileTest
+//
+// This class checks that weights written by Network.writeWeightsBinary
+// come back from Network.readWeightsBinary bit for bit, and that a file
+// that has been damaged or cut short is rejected without changing the
+// network it is read into.  The network is large enough that its weight
+// matrices span several of the buffers that the file is moved through.
+//
+
+package pa4;
+
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+
+public class WeightFileTest {
+
+    static final long SEED = 31;      // seed for the random weights
+
+    @TempDir
+    Path dir;                         // directory for the weight files
+
+    // newNetwork -- Return a network with three layers, two of them
+    // large, and every weight and bias weight set to random bits, NaNs
+    // and infinities included, from the given generator.
+    static Network newNetwork(Random generator) {
+	Network net = new Network();
+	Layer in = net.createLayer(300, -1.0, 1.0);
+	Layer hidden = net.createLayer(500);
+	Layer out = net.createLayer(7);
+	net.createProjection(in, hidden);
+	net.createProjection(hidden, out);
+	net.createProjection(in, out);
+	for (Layer lay : net.layers) {
+	    randomize(generator, lay.bias.el);
+	    for (Projection p : lay.inputs)
+		for (int i = 0; i < p.W.rows; i++)
+		    randomize(generator, p.W.el[i]);
+	}
+	return (net);
+    }
+
+    // randomize -- Fill the given array with random bits.
+    static void randomize(Random generator, double[] vals) {
+	for (int i = 0; i < vals.length; i++)
+	    vals[i] = Double.longBitsToDouble(generator.nextLong());
+    }
+
+    // assertSameWeights -- Check that the weights and bias weights of the
+    // two networks are the same, bit for bit.
+    static void assertSameWeights(Network expected, Network actual) {
+	List<Layer> expectedLayers = new ArrayList<Layer>(expected.layers);
+	List<Layer> actualLayers = new ArrayList<Layer>(actual.layers);
+	for (int l = 0; l < expectedLayers.size(); l++) {
+	    Layer e = expectedLayers.get(l);
+	    Layer a = actualLayers.get(l);
+	    assertArrayEquals(bits(e.bias.el), bits(a.bias.el));
+	    for (int k = 0; k < e.inputs.size(); k++)
+		for (int i = 0; i < e.inputs.get(k).W.rows; i++)
+		    assertArrayEquals(bits(e.inputs.get(k).W.el[i]),
+				      bits(a.inputs.get(k).W.el[i]));
+	}
+    }
+
+    // bits -- Return the raw bits of each of the given values.
+    static long[] bits(double[] vals) {
+	long[] result = new long[vals.length];
+	for (int i = 0; i < vals.length; i++)
+	    result[i] = Double.doubleToRawLongBits(vals[i]);
+	return (result);
+    }
+
+    // written -- Write a random network to a file, returning its name.
+    String written() {
+	String filename = dir.resolve("net.wts").toString();
+	assertTrue(newNetwork(new Random(SEED)).writeWeightsBinary(filename));
+	return (filename);
+    }
+
+    @Test
+    public void roundTripIsBitExact() {
+	String filename = written();
+	Network net = newNetwork(new Random(SEED + 1));
+	assertTrue(net.readWeightsBinary(filename));
+	assertSameWeights(newNetwork(new Random(SEED)), net);
+    }
+
+    @Test
+    public void damagedFileRejected() throws IOException {
+	String filename = written();
+	long length = new File(filename).length();
+	// Damage one bit of a weight, then one of the checksum itself ...
+	for (long offset : new long[] {length / 2, length - 1}) {
+	    RandomAccessFile file = new RandomAccessFile(filename, "rw");
+	    try {
+		file.seek(offset);
+		int b = file.read();
+		file.seek(offset);
+		file.write(b ^ 0x10);
+	    } finally {
+		file.close();
+	    }
+	    Network net = newNetwork(new Random(SEED + 1));
+	    assertFalse(net.readWeightsBinary(filename));
+	    assertSameWeights(newNetwork(new Random(SEED + 1)), net);
+	    written();
+	}
+    }
+
+    @Test
+    public void truncatedFileRejected() throws IOException {
+	String filename = written();
+	long length = new File(filename).length();
+	for (long cut : new long[] {1, 8, length / 2, length - 4}) {
+	    RandomAccessFile file = new RandomAccessFile(filename, "rw");
+	    try {
+		file.setLength(length - cut);
+	    } finally {
+		file.close();
+	    }
+	    Network net = newNetwork(new Random(SEED + 1));
+	    assertFalse(net.readWeightsBinary(filename));
+	    assertSameWeights(newNetwork(new Random(SEED + 1)), net);
+	    written();
+	}
+    }
+
+    @Test
+    public void missingFileRejected() {
+	Network net = newNetwork(new Random(SEED));
+	assertFalse(net.readWeightsBinary(dir.resolve("none.wts").toString()));
+    }
+
+
+}